@@ -0,0 +1,167 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import me.kernelfreeze.bedrockproxy.raknet.util.PacketAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the byte I/O of <code>Packet</code> with the byte at a time loops
+ * it used before, for payloads the size of a single byte up to a full
+ * datagram. The <code>loop</code> benchmarks are copies of the old
+ * implementations, the <code>bulk</code> benchmarks call the packet itself.
+ * Both reset their buffers the same way on every call.
+ * Run with <code>mvn test -Pbenchmark</code>.
+ *
+ * @author KernelFreeze
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBenchmark {
+
+    @Param({"1", "16", "128", "512", "1400"})
+    private int size;
+
+    private byte[] data;
+    private Packet payload;
+    private Packet target;
+
+    @Setup
+    public void setup() {
+        this.data = new byte[size];
+        new Random(size).nextBytes(data);
+        this.payload = new Packet(PacketAllocator.copiedBuffer(data));
+        this.target = new Packet(PacketAllocator.buffer(size * 2));
+    }
+
+    @TearDown
+    public void tearDown() {
+        payload.release();
+        target.release();
+    }
+
+    @Benchmark
+    public ByteBuf writeLoop() {
+        ByteBuf buffer = target.buffer().clear();
+        for (int i = 0; i < data.length; i++) {
+            buffer.writeByte(data[i]);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public Packet writeBulk() {
+        target.buffer().clear();
+        return target.write(data);
+    }
+
+    @Benchmark
+    public byte[] readLoop() {
+        ByteBuf buffer = payload.buffer().readerIndex(0);
+        byte[] dest = new byte[size];
+        for (int i = 0; i < dest.length; i++) {
+            dest[i] = buffer.readByte();
+        }
+        return dest;
+    }
+
+    @Benchmark
+    public byte[] readBulk() {
+        payload.buffer().readerIndex(0);
+        return payload.read(size);
+    }
+
+    @Benchmark
+    public ByteBuf padLoop() {
+        ByteBuf buffer = target.buffer().clear();
+        for (int i = 0; i < size; i++) {
+            buffer.writeByte(0x00);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public Packet padBulk() {
+        target.buffer().clear();
+        return target.pad(size);
+    }
+
+    @Benchmark
+    public int sizeLoop() {
+        return ByteBufUtil.getBytes(payload.buffer(), 0, payload.buffer().writerIndex()).length;
+    }
+
+    @Benchmark
+    public int sizeBulk() {
+        return payload.size();
+    }
+
+    /**
+     * Writing a payload the way <code>EncapsulatedPacket</code> used to, by
+     * copying it into an array and writing the array a byte at a time.
+     */
+    @Benchmark
+    public ByteBuf encodeLoop() {
+        ByteBuf buffer = target.buffer().clear();
+        byte[] array = ByteBufUtil.getBytes(payload.buffer(), 0, payload.buffer().writerIndex());
+        for (int i = 0; i < array.length; i++) {
+            buffer.writeByte(array[i]);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public Packet encodeBulk() {
+        target.buffer().clear();
+        return target.write(payload);
+    }
+
+}
@@ -55,12 +55,13 @@ public class Compression {
      * @throws DataFormatException if data could not be inflated
      */
     public static ByteBuf inflate(ByteBuf buffer) throws DataFormatException {
-        // Ensure that this buffer is direct.
+        // Ensure that this buffer is one contiguous block of native memory,
+        // composite buffers such as reassembled split packets are direct too.
         ByteBuf source = null;
         ByteBuf decompressed = PooledByteBufAllocator.DEFAULT.directBuffer();
 
         try {
-            if (!buffer.isDirect()) {
+            if (!buffer.hasMemoryAddress()) {
                 // We don't have a direct buffer. Create one.
                 ByteBuf temporary = PooledByteBufAllocator.DEFAULT.directBuffer();
                 temporary.writeBytes(buffer);
@@ -112,7 +113,7 @@ public class Compression {
         ByteBuf source = null;
 
         try {
-            if (!toCompress.isDirect()) {
+            if (!toCompress.hasMemoryAddress()) {
                 // Source is not a direct buffer. Work on a temporary direct buffer and then write the contents out.
                 source = PooledByteBufAllocator.DEFAULT.directBuffer();
                 source.writeBytes(toCompress);
@@ -120,7 +121,7 @@ public class Compression {
                 source = toCompress;
             }
 
-            if (!into.isDirect()) {
+            if (!into.hasMemoryAddress()) {
                 // Destination is not a direct buffer. Work on a temporary direct buffer and then write the contents out.
                 destination = PooledByteBufAllocator.DEFAULT.directBuffer();
             } else {
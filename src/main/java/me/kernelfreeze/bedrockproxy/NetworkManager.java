@@ -8,6 +8,7 @@ import me.kernelfreeze.bedrockproxy.raknet.identifier.MCPEIdentifier;
 import me.kernelfreeze.bedrockproxy.raknet.protocol.Reliability;
 import me.kernelfreeze.bedrockproxy.raknet.server.RakNetServer;
 import me.kernelfreeze.bedrockproxy.raknet.server.RakNetServerListener;
+import me.kernelfreeze.bedrockproxy.raknet.server.ServerPing;
 import me.kernelfreeze.bedrockproxy.raknet.session.RakNetClientSession;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.config.ListenerInfo;
@@ -52,6 +53,7 @@ public class NetworkManager implements RakNetServerListener {
 
         server = new RakNetServer(BedrockProxy.PORT, limit, id);
         server.setListener(this);
+        server.setIngressChannels(Runtime.getRuntime().availableProcessors());
 
         server.startThreaded();
         BedrockProxy.getInstance().getLogger().info("Listening for MCPE clients on 0.0.0.0:" + BedrockProxy.PORT);
@@ -65,6 +67,14 @@ public class NetworkManager implements RakNetServerListener {
         sendPacket(player.getSession(), packet);
     }
 
+    @Override
+    public void handlePing(ServerPing ping) {
+        // The cached ping response is refreshed on a timer, keep the player count live
+        if (ping.getIdentifier() instanceof MCPEIdentifier) {
+            ((MCPEIdentifier) ping.getIdentifier()).setOnlinePlayerCount(ProxyServer.getInstance().getOnlineCount());
+        }
+    }
+
     @Override
     public void onClientConnect(RakNetClientSession session) {
         BedrockProxy.getInstance().getLogger().info(
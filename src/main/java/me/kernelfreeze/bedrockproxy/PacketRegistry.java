@@ -16,8 +16,12 @@ public class PacketRegistry {
 
             if (type != NetworkType.UNKOWN && type.getHandle() != null) {
                 DataPacket inst = (DataPacket) type.getHandle().getConstructor(RakNetPacket.class).newInstance(packet);
-                inst.setPlayer(player);
-                inst.handle();
+                try {
+                    inst.setPlayer(player);
+                    inst.handle();
+                } finally {
+                    inst.release(); // Frees any buffer the packet replaced its view with
+                }
             } else {
                 BedrockProxy.getInstance().getLogger().warning(
                         String.format("Unknown packet 0x%s from %s",
@@ -35,8 +35,13 @@ public class BatchPacket extends DataPacket {
         }
 
         buffer().readerIndex(2);
-        while (buffer().readerIndex() < buffer().readableBytes()) {
-            PacketRegistry.handlePacket(new RakNetPacket(readBytes()), getPlayer());
+        while (buffer().isReadable()) {
+            RakNetPacket packet = readPacket();
+            try {
+                PacketRegistry.handlePacket(packet, getPlayer());
+            } finally {
+                packet.release();
+            }
         }
     }
 }
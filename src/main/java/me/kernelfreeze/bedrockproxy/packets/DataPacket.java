@@ -48,17 +48,30 @@ public class DataPacket extends RakNetPacket {
     }
 
     public byte[] readBytes() {
-        int len = readUShort();
-        if (buffer().readerIndex() + len > buffer().readableBytes()) {
-            throw new RuntimeException("I can't read " + (buffer().readableBytes() - buffer().readerIndex() + len) + " bytes!");
-        }
-        byte[] r = new byte[len];
+        byte[] r = new byte[checkLength(readUShort())];
         read(r);
         return r;
     }
 
+    /**
+     * Reads a length prefixed packet without copying it, the returned packet
+     * holds its own reference to the data and must be released.
+     *
+     * @return the packet that was read.
+     */
+    public RakNetPacket readPacket() {
+        return new RakNetPacket(buffer().readRetainedSlice(checkLength(readUShort())));
+    }
+
     public void skip(int bytes) {
-        buffer().readerIndex(buffer().readerIndex() + bytes);
+        buffer().skipBytes(checkLength(bytes));
+    }
+
+    private int checkLength(int len) {
+        if (len > remaining()) {
+            throw new RuntimeException("I can't read " + len + " bytes, only " + remaining() + " are left!");
+        }
+        return len;
     }
 
     public void handle() {
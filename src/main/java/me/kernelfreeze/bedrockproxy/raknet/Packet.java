@@ -31,10 +31,11 @@
 package me.kernelfreeze.bedrockproxy.raknet;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.socket.DatagramPacket;
 import me.kernelfreeze.bedrockproxy.raknet.stream.PacketDataInput;
 import me.kernelfreeze.bedrockproxy.raknet.stream.PacketDataOutput;
+import me.kernelfreeze.bedrockproxy.raknet.util.PacketAllocator;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -45,6 +46,21 @@ import static me.kernelfreeze.bedrockproxy.raknet.protocol.MessageIdentifier.MAG
 
 /**
  * Used to read and write data with ease.
+ * <p>
+ * New packets are backed by pooled direct buffers from the
+ * {@link PacketAllocator}. A packet owns one reference to its buffer, unless
+ * it was created as a view of another packet, and the owner must either
+ * {@link #release() release} the packet or hand the reference over with
+ * {@link #transferBuffer()} once it is done with it. Sending a packet
+ * transfers it, the sender then releases the buffer once it has been written.
+ * <ul>
+ * <li>{@link #buffer()} borrows the buffer, the reference count is not
+ * touched.</li>
+ * <li>{@link #retainedBuffer()} returns a new reference to the buffer, the
+ * packet stays valid.</li>
+ * <li>{@link #transferBuffer()} hands the reference of the packet over, the
+ * packet must not be used afterwards.</li>
+ * </ul>
  *
  * @author MarfGamer
  */
@@ -57,17 +73,20 @@ public class Packet {
     public static final int ADDRESS_VERSION_IPV6_MYSTERY_LENGTH = 0x0A;
 
     private ByteBuf buffer;
+    private boolean owner;
     private PacketDataInput input;
     private PacketDataOutput output;
 
     /**
      * Constructs a <code>Packet</code> that reads from and writes to the
-     * specified <code>ByteBuf</code>.
+     * specified <code>ByteBuf</code>, the packet takes over the reference of
+     * the caller.
      *
      * @param buffer the <code>ByteBuf</code> to read from and write to.
      */
     public Packet(ByteBuf buffer) {
         this.buffer = buffer;
+        this.owner = true;
         this.input = new PacketDataInput(this);
         this.output = new PacketDataOutput(this);
     }
@@ -79,7 +98,7 @@ public class Packet {
      * @param datagram the <code>DatagramPacket</code> to read from and write to.
      */
     public Packet(DatagramPacket datagram) {
-        this(Unpooled.copiedBuffer(datagram.content()));
+        this(PacketAllocator.copiedBuffer(datagram.content()));
     }
 
     /**
@@ -89,25 +108,28 @@ public class Packet {
      * @param data the byte[] to read from and write to.
      */
     public Packet(byte[] data) {
-        this(Unpooled.copiedBuffer(data));
+        this(PacketAllocator.copiedBuffer(data));
     }
 
     /**
-     * Constructs a <code>Packet</code> that reads from and writes to the
-     * specified <code>Packet</code>.
+     * Constructs a <code>Packet</code> that reads from the remaining data of
+     * the specified <code>Packet</code>. The data is shared rather than
+     * copied, so the new packet is only valid for as long as the specified
+     * packet is.
      *
-     * @param packet the <code>Packet</code> to read from and write to.
+     * @param packet the <code>Packet</code> to read from.
      */
     public Packet(Packet packet) {
-        this(Unpooled.copiedBuffer(packet.buffer));
+        this(packet.buffer.slice());
+        this.owner = false;
     }
 
     /**
-     * Constructs a blank <code>Packet</code> using an empty
+     * Constructs a blank <code>Packet</code> using an empty pooled
      * <code>ByteBuf</code>.
      */
     public Packet() {
-        this(Unpooled.buffer());
+        this(PacketAllocator.buffer());
     }
 
     /**
@@ -116,9 +138,7 @@ public class Packet {
      * @param dest the bytes to read the data into.
      */
     public void read(byte[] dest) {
-        for (int i = 0; i < dest.length; i++) {
-            dest[i] = buffer.readByte();
-        }
+        buffer.readBytes(dest);
     }
 
     /**
@@ -129,9 +149,7 @@ public class Packet {
      */
     public byte[] read(int length) {
         byte[] data = new byte[length];
-        for (int i = 0; i < data.length; i++) {
-            data[i] = buffer.readByte();
-        }
+        buffer.readBytes(data);
         return data;
     }
 
@@ -153,15 +171,6 @@ public class Packet {
         return (short) (buffer.readByte() & 0xFF);
     }
 
-    /**
-     * Reads a flipped unsigned byte casted back to a byte.
-     *
-     * @return a flipped unsigned byte casted back to a byte.
-     */
-    private byte readCFUByte() {
-        return (byte) (~buffer.readByte() & 0xFF);
-    }
-
     /**
      * Returns a byte array of the read flipped unsigned byte's casted back to a
      * byte.
@@ -172,8 +181,9 @@ public class Packet {
      */
     private byte[] readCFU(int length) {
         byte[] data = new byte[length];
+        buffer.readBytes(data);
         for (int i = 0; i < data.length; i++) {
-            data[0] = this.readCFUByte();
+            data[i] = (byte) ~data[i];
         }
         return data;
     }
@@ -229,7 +239,7 @@ public class Packet {
      * @return a little endian triad.
      */
     public int readTriadLE() {
-        return (buffer.readByte() & 0xFF) | ((buffer.readByte() & 0xFF) << 8) | ((buffer.readByte() & 0x0F) << 16);
+        return (buffer.readByte() & 0xFF) | ((buffer.readByte() & 0xFF) << 8) | ((buffer.readByte() & 0xFF) << 16);
     }
 
     /**
@@ -367,9 +377,19 @@ public class Packet {
      * @return the packet.
      */
     public Packet write(byte[] data) {
-        for (int i = 0; i < data.length; i++) {
-            buffer.writeByte(data[i]);
-        }
+        buffer.writeBytes(data);
+        return this;
+    }
+
+    /**
+     * Writes the data of the specified packet to the packet without copying
+     * it into a byte array first.
+     *
+     * @param packet the packet to write.
+     * @return the packet.
+     */
+    public Packet write(Packet packet) {
+        buffer.writeBytes(packet.buffer, 0, packet.buffer.writerIndex());
         return this;
     }
 
@@ -380,9 +400,7 @@ public class Packet {
      * @return the packet.
      */
     public Packet pad(int length) {
-        for (int i = 0; i < length; i++) {
-            buffer.writeByte(0x00);
-        }
+        buffer.writeZero(length);
         return this;
     }
 
@@ -408,17 +426,6 @@ public class Packet {
         return this;
     }
 
-    /**
-     * Writes a flipped unsigned byte casted back into a byte to the packet.
-     *
-     * @param b the byte
-     * @return the packet.
-     */
-    private Packet writeCFUByte(byte b) {
-        buffer.writeByte(~b & 0xFF);
-        return this;
-    }
-
     /**
      * Writes a byte array of the specified flipped unsigned byte's casted back
      * to a byte to the packet.
@@ -427,9 +434,17 @@ public class Packet {
      * @return the packet.
      */
     private Packet writeCFU(byte[] data) {
+        if (data.length == 4) {
+            // An IPv4 address flips as a single int
+            buffer.writeInt(~((data[0] & 0xFF) << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8
+                    | (data[3] & 0xFF)));
+            return this;
+        }
+        byte[] flipped = new byte[data.length];
         for (int i = 0; i < data.length; i++) {
-            this.writeCFUByte(data[i]);
+            flipped[i] = (byte) ~data[i];
         }
+        buffer.writeBytes(flipped);
         return this;
     }
 
@@ -676,28 +691,82 @@ public class Packet {
      * @return the packet as a byte array.
      */
     public byte[] array() {
-        return Arrays.copyOfRange(buffer.array(), 0, buffer.writerIndex());
+        return ByteBufUtil.getBytes(buffer, 0, buffer.writerIndex());
     }
 
     /**
      * @return the size of the packet in bytes.
      */
     public int size() {
-        return array().length;
+        return buffer.writerIndex();
     }
 
     /**
+     * Returns the packet's buffer, the buffer is only borrowed and is not
+     * retained. Callers that hand the buffer to something that releases it,
+     * such as a channel, must use {@link #retainedBuffer()} or
+     * {@link #transferBuffer()} instead.
+     *
      * @return the packet's buffer.
      */
     public ByteBuf buffer() {
-        return this.buffer.retain();
+        return this.buffer;
+    }
+
+    /**
+     * Returns the packet's buffer with a new reference that belongs to the
+     * caller, the packet itself stays valid.
+     *
+     * @return the retained buffer of the packet.
+     */
+    public ByteBuf retainedBuffer() {
+        return buffer.retain();
+    }
+
+    /**
+     * Hands the reference the packet holds to its buffer over to the caller,
+     * the packet must not be used afterwards. If the packet is a view of
+     * another packet the buffer is retained instead, since the view has no
+     * reference to give away.
+     *
+     * @return the buffer of the packet.
+     */
+    public ByteBuf transferBuffer() {
+        if (this.owner == false) {
+            return buffer.retain();
+        }
+        this.owner = false;
+        return this.buffer;
+    }
+
+    /**
+     * Releases the reference the packet holds to its buffer, this must be
+     * called once the packet is no longer needed. Packets that are views of
+     * another packet or whose buffer was transferred hold no reference, for
+     * them this does nothing.
+     *
+     * @return true if the buffer was deallocated.
+     */
+    public boolean release() {
+        if (this.owner == false) {
+            return false;
+        }
+        this.owner = false;
+        return buffer.release();
     }
 
     /**
-     * Set the packet's buffer.
+     * Sets the packet's buffer, the packet takes over the reference of the
+     * caller and releases the buffer it held before.
+     *
+     * @param buffer the new buffer.
      */
     public void setBuffer(ByteBuf buffer) {
+        if (this.owner == true && this.buffer != buffer) {
+            this.buffer.release();
+        }
         this.buffer = buffer;
+        this.owner = true;
     }
 
     /**
@@ -727,15 +796,14 @@ public class Packet {
      * @param buffer the new buffer.
      */
     public final void setBuffer(byte[] buffer) {
-        this.buffer = Unpooled.copiedBuffer(buffer);
+        this.setBuffer(PacketAllocator.copiedBuffer(buffer));
     }
 
     /**
      * Flips the packet.
      */
     public void flip() {
-        byte[] data = buffer.array();
-        this.buffer = Unpooled.copiedBuffer(data);
+        this.setBuffer(PacketAllocator.copiedBuffer(buffer.slice(0, buffer.writerIndex())));
     }
 
     /**
@@ -49,11 +49,25 @@ public class RakNet {
     public static final byte DEFAULT_CHANNEL = 0x00;
     public static final int MAX_SPLIT_COUNT = 128;
     public static final int MAX_SPLITS_PER_QUEUE = 4;
+    public static final int MAX_SPLIT_SIZE_PER_SESSION = 1024 * 1024;
+    public static final long MAX_SPLIT_SIZE = 64L * 1024 * 1024;
+    public static final int ORDER_WINDOW_SIZE = 1024;
     public static final int MAX_PACKETS_PER_SECOND = 500;
+    public static final int MAX_UNCONNECTED_PACKETS_PER_SECOND = 10;
+    public static final int MAX_UNCONNECTED_PACKET_BURST = 20;
+    public static final int RELIABLE_WINDOW_SIZE = 8192;
+    public static final int RECEIVE_WINDOW_SIZE = 2048;
+    public static final int MAX_ACKNOWLEDGE_RECORDS = 512;
+    public static final int MAX_ACKNOWLEDGE_SPAN = 8192;
 
     // Session timing
     public static final long SEND_INTERVAL = 50L;
-    public static final long RECOVERY_SEND_INTERVAL = SEND_INTERVAL;
+    public static final long INITIAL_RETRANSMISSION_TIMEOUT = 500L;
+    public static final long MINIMUM_RETRANSMISSION_TIMEOUT = 100L;
+    public static final long MAXIMUM_RETRANSMISSION_TIMEOUT = 5000L;
+    public static final long REORDER_THRESHOLD = 40L;
+    public static final long SPLIT_TIMEOUT = 10000L;
+    public static final long PONG_REFRESH_INTERVAL = 1000L;
     public static final long PING_SEND_INTERVAL = 2500L;
     public static final long DETECTION_SEND_INTERVAL = PING_SEND_INTERVAL * 2;
     public static final long SESSION_TIMEOUT = DETECTION_SEND_INTERVAL * 5;
@@ -31,8 +31,8 @@
 package me.kernelfreeze.bedrockproxy.raknet;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.socket.DatagramPacket;
+import me.kernelfreeze.bedrockproxy.raknet.util.PacketAllocator;
 
 /**
  * A generic RakNet packet that has the ability to get the ID of the packet
@@ -92,7 +92,7 @@ public class RakNetPacket extends Packet {
      * @param data the byte array to read from and write to.
      */
     public RakNetPacket(byte[] data) {
-        this(Unpooled.copiedBuffer(data));
+        this(PacketAllocator.copiedBuffer(data));
     }
 
     /**
@@ -38,6 +38,7 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.concurrent.Promise;
 import me.kernelfreeze.bedrockproxy.raknet.*;
 import me.kernelfreeze.bedrockproxy.raknet.client.discovery.DiscoveredServer;
 import me.kernelfreeze.bedrockproxy.raknet.client.discovery.DiscoveryMode;
@@ -53,7 +54,11 @@ import me.kernelfreeze.bedrockproxy.raknet.protocol.status.UnconnectedPingOpenCo
 import me.kernelfreeze.bedrockproxy.raknet.protocol.status.UnconnectedPong;
 import me.kernelfreeze.bedrockproxy.raknet.session.RakNetServerSession;
 import me.kernelfreeze.bedrockproxy.raknet.session.RakNetState;
+import me.kernelfreeze.bedrockproxy.raknet.session.SessionScheduler;
 import me.kernelfreeze.bedrockproxy.raknet.session.UnumRakNetPeer;
+import me.kernelfreeze.bedrockproxy.raknet.session.congestion.AimdCongestionController;
+import me.kernelfreeze.bedrockproxy.raknet.session.congestion.CongestionController;
+import me.kernelfreeze.bedrockproxy.raknet.util.PacketAllocator;
 import me.kernelfreeze.bedrockproxy.raknet.util.RakNetUtils;
 import me.kernelfreeze.bedrockproxy.raknet.util.map.IntMap;
 
@@ -63,6 +68,7 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import static me.kernelfreeze.bedrockproxy.raknet.protocol.MessageIdentifier.*;
 
@@ -94,10 +100,12 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
     private final IntMap<MaximumTransferUnit> maximumTransferUnits;
     private int discoveryPort;
     private DiscoveryMode discoveryMode;
+    private volatile Supplier<? extends CongestionController> congestionControl;
     // Session management
     private Channel channel;
     private SessionPreparation preparation;
     private volatile RakNetServerSession session;
+    private volatile Promise<Void> connection;
     private volatile RakNetClientListener listener;
 
     /**
@@ -128,6 +136,7 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
         this.bootstrap = new Bootstrap();
         this.group = new NioEventLoopGroup();
         this.handler = new RakNetClientHandler(this);
+        this.congestionControl = AimdCongestionController::new;
 
         // Add maximum transfer units
         this.maximumTransferUnits = new IntMap<MaximumTransferUnit>();
@@ -139,7 +148,8 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
         // Initiate bootstrap data
         try {
             bootstrap.channel(NioDatagramChannel.class).group(group).handler(handler);
-            bootstrap.option(ChannelOption.SO_BROADCAST, true).option(ChannelOption.SO_REUSEADDR, false);
+            bootstrap.option(ChannelOption.SO_BROADCAST, true).option(ChannelOption.SO_REUSEADDR, false)
+                    .option(ChannelOption.ALLOCATOR, PacketAllocator.getAllocator());
             this.channel = bootstrap.bind(0).sync().channel();
         } catch (InterruptedException e) {
             e.printStackTrace();
@@ -212,6 +222,29 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
         this.discoveryPort = discoveryPort;
     }
 
+    /**
+     * @return the factory used to create the congestion controller of the
+     * session.
+     */
+    public final Supplier<? extends CongestionController> getCongestionControl() {
+        return this.congestionControl;
+    }
+
+    /**
+     * Sets the factory used to create the congestion controller of the
+     * session, such as <code>AimdCongestionController::new</code> or
+     * <code>CubicCongestionController::new</code>. This takes effect on the
+     * next connection.
+     *
+     * @param congestionControl the congestion controller factory.
+     */
+    public final void setCongestionControl(Supplier<? extends CongestionController> congestionControl) {
+        if (congestionControl == null) {
+            throw new NullPointerException();
+        }
+        this.congestionControl = congestionControl;
+    }
+
     /**
      * @return the client's discovery mode.
      */
@@ -506,7 +539,7 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
      * @param address the address to send the packet to.
      */
     public final void sendNettyMessage(Packet packet, InetSocketAddress address) {
-        this.sendNettyMessage(packet.buffer(), address);
+        this.sendNettyMessage(packet.transferBuffer(), address);
     }
 
     /**
@@ -563,8 +596,9 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
                         ping.encode();
 
                         for (InetSocketAddress externalAddress : externalServers.keySet()) {
-                            this.sendNettyMessage(ping, externalAddress);
+                            this.sendNettyMessage(ping.buffer().retainedDuplicate(), externalAddress);
                         }
+                        ping.release();
                     }
                 }
             }
@@ -674,6 +708,7 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
                 this.sendNettyMessage(connectionRequestTwo, address);
                 RakNetUtils.threadLock(500);
             } else {
+                connectionRequestTwo.release();
                 preparation.cancelReason = new PacketBufferException(this, connectionRequestTwo);
             }
         }
@@ -687,6 +722,7 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
         if (preparation.readyForSession()) {
             // Set session and delete preparation data
             this.session = preparation.createSession(channel);
+            session.setCongestionController(congestionControl.get());
             this.preparation = null;
 
             // Send connection packet
@@ -805,11 +841,37 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
     }
 
     /**
-     * Starts the loop needed for the client to stay connected to the server.
+     * Starts updating the session on the event loop of the channel and waits
+     * until the client is disconnected from the server.
      */
     private final void initConnection() throws RakNetException {
-        while (session != null) {
-            session.update();
+        RakNetServerSession session = this.session;
+        Promise<Void> connection = channel.eventLoop().newPromise();
+        SessionScheduler<RakNetServerSession> scheduler = new SessionScheduler<RakNetServerSession>(
+                channel.eventLoop(), updated -> {
+                    try {
+                        updated.update();
+                    } catch (Throwable throwable) {
+                        connection.tryFailure(throwable);
+                    }
+                });
+        this.connection = connection;
+        scheduler.start();
+        scheduler.register(session);
+
+        // Wait for the client to disconnect or the session to fail
+        connection.awaitUninterruptibly();
+        scheduler.unregister(session);
+        scheduler.stop();
+        session.release();
+        if (!connection.isSuccess()) {
+            Throwable cause = connection.cause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RakNetException(cause);
         }
     }
 
@@ -817,6 +879,8 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
     public final void sendMessage(Reliability reliability, int channel, Packet packet) {
         if (this.isConnected()) {
             session.sendMessage(reliability, channel, packet);
+        } else {
+            packet.release();
         }
     }
 
@@ -831,6 +895,11 @@ public class RakNetClient implements UnumRakNetPeer, RakNetClientListener {
             this.getListener().onDisconnect(session, reason);
         }
         this.session = null;
+
+        // Stop the connection loop
+        if (connection != null) {
+            connection.trySuccess(null);
+        }
     }
 
     /**
@@ -66,17 +66,20 @@ public class RakNetClientHandler extends ChannelInboundHandlerAdapter {
             InetSocketAddress sender = datagram.sender();
             RakNetPacket packet = new RakNetPacket(datagram);
 
-            // If an exception happens it's because of this address
-            this.causeAddress = sender;
+            try {
+                // If an exception happens it's because of this address
+                this.causeAddress = sender;
 
-            // Handle the packet and release the buffer
-            client.handleMessage(packet, sender);
-            datagram.content().readerIndex(0); // Reset position
-            client.getListener().handleNettyMessage(datagram.content(), sender);
-            datagram.content().release(); // No longer needed
+                // Handle the packet
+                client.handleMessage(packet, sender);
+                datagram.content().readerIndex(0); // Reset position
+                client.getListener().handleNettyMessage(datagram.content(), sender);
 
-            // No exceptions occurred, release the suspect
-            this.causeAddress = null;
+                // No exceptions occurred, release the suspect
+                this.causeAddress = null;
+            } finally {
+                packet.release(); // The packet owns the datagram buffer
+            }
         }
     }
 
@@ -141,7 +141,9 @@ public interface RakNetClientListener {
 
     /**
      * Called when a packet has been received from the server and is ready to be
-     * handled.
+     * handled. The packet shares the data of the received datagram and is only
+     * valid until this method returns, it must be copied or retained to be
+     * kept.
      *
      * @param session the server that sent the packet.
      * @param packet  the packet received from the server.
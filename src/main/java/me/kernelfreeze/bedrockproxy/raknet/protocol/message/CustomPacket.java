@@ -58,13 +58,16 @@ public class CustomPacket extends RakNetPacket {
      * written to it.
      */
     public static int calculateDummy() {
-        CustomPacket custom = new CustomPacket();
-        custom.encode();
-        return custom.size();
+        return 1 + SEQUENCE_NUMBER_LENGTH; // Packet ID and sequence number
     }
 
+    /**
+     * Encodes the packet, the buffer is grown to the size of the whole
+     * datagram up front and every message is written straight into it.
+     */
     @Override
     public void encode() {
+        this.buffer().ensureWritable(this.calculateSize() - this.size());
         this.writeTriadLE(sequenceNumber);
         for (EncapsulatedPacket packet : messages) {
             // Encode packet and write to buffer
@@ -76,18 +79,32 @@ public class CustomPacket extends RakNetPacket {
         }
     }
 
+    /**
+     * Decodes the packet, the payloads of the decoded messages are retained
+     * slices of this packet's buffer and must be released by whoever handles
+     * them.
+     */
     @Override
     public void decode() {
         this.sequenceNumber = this.readTriadLE();
-        while (this.remaining() >= EncapsulatedPacket.MINIMUM_BUFFER_LENGTH) {
-            // Decode packet
-            EncapsulatedPacket packet = new EncapsulatedPacket();
-            packet.buffer = new Packet(this.buffer());
-            packet.decode();
-
-            // Buffer is no longer needed, add the packet to the list
-            packet.buffer = null;
-            messages.add(packet);
+        try {
+            while (this.remaining() >= EncapsulatedPacket.MINIMUM_BUFFER_LENGTH) {
+                // Decode packet
+                EncapsulatedPacket packet = new EncapsulatedPacket();
+                packet.buffer = this;
+                packet.decode();
+
+                // Buffer is no longer needed, add the packet to the list
+                packet.buffer = null;
+                messages.add(packet);
+            }
+        } catch (RuntimeException e) {
+            // Do not leak the messages decoded so far
+            for (EncapsulatedPacket message : this.messages) {
+                message.payload.release();
+            }
+            messages.clear();
+            throw e;
         }
     }
 
@@ -95,8 +112,7 @@ public class CustomPacket extends RakNetPacket {
      * @return the size of the packet would be if it had been encoded.
      */
     public int calculateSize() {
-        int packetSize = 1; // Packet ID
-        packetSize += SEQUENCE_NUMBER_LENGTH;
+        int packetSize = CustomPacket.calculateDummy();
         for (EncapsulatedPacket message : this.messages) {
             packetSize += message.calculateSize();
         }
@@ -30,7 +30,6 @@
  */
 package me.kernelfreeze.bedrockproxy.raknet.protocol.message;
 
-import io.netty.buffer.Unpooled;
 import me.kernelfreeze.bedrockproxy.raknet.Packet;
 import me.kernelfreeze.bedrockproxy.raknet.protocol.Reliability;
 
@@ -65,7 +64,7 @@ public class EncapsulatedPacket {
     public int splitIndex;
     public Packet payload;
     // Used to encode and decode, modified by CustomPacket only
-    protected Packet buffer = new Packet();
+    protected Packet buffer;
 
     /**
      * @param reliability the reliability of the packet.
@@ -76,12 +75,7 @@ public class EncapsulatedPacket {
      * of the specified payload without any extra data written to it.
      */
     public static int calculateDummy(Reliability reliability, boolean split, Packet payload) {
-        EncapsulatedPacket dummy = new EncapsulatedPacket();
-        dummy.reliability = reliability;
-        dummy.payload = payload;
-        dummy.split = true;
-        dummy.encode();
-        return dummy.buffer.size();
+        return EncapsulatedPacket.calculateDummy(reliability, split) + payload.size();
     }
 
     /**
@@ -92,7 +86,17 @@ public class EncapsulatedPacket {
      * extra data written to it.
      */
     public static int calculateDummy(Reliability reliability, boolean split) {
-        return EncapsulatedPacket.calculateDummy(reliability, split, new Packet());
+        int headerSize = BITFLAG_LENGTH + PAYLOAD_LENGTH_LENGTH;
+        if (reliability.isReliable()) {
+            headerSize += MESSAGE_INDEX_LENGTH;
+        }
+        if (reliability.isOrdered() || reliability.isSequenced()) {
+            headerSize += ORDER_INDEX_ORDER_CHANNEL_LENGTH;
+        }
+        if (split == true) {
+            headerSize += SPLIT_COUNT_SPLIT_ID_SPLIT_INDEX_LENGTH;
+        }
+        return headerSize;
     }
 
     /**
@@ -117,11 +121,12 @@ public class EncapsulatedPacket {
             buffer.writeInt(splitIndex);
         }
 
-        buffer.write(payload.array());
+        buffer.write(payload);
     }
 
     /**
-     * Decodes the packet.
+     * Decodes the packet, the payload is a retained slice of the buffer
+     * instead of a copy and must be released once it has been handled.
      */
     public void decode() {
         byte flags = buffer.readByte();
@@ -144,32 +149,14 @@ public class EncapsulatedPacket {
             this.splitIndex = buffer.readInt();
         }
 
-        this.payload = new Packet(Unpooled.copiedBuffer(buffer.read(length)));
+        this.payload = new Packet(buffer.buffer().readRetainedSlice(length));
     }
 
     /**
      * @return what the size of the packet would be if it had been encoded.
      */
     public int calculateSize() {
-        int packetSize = 0; // Unlike CustomPacket EncapsulatedPacket has no ID,
-        // so this starts at 0 instead of 1
-        packetSize += BITFLAG_LENGTH;
-        packetSize += PAYLOAD_LENGTH_LENGTH;
-
-        if (reliability.isReliable()) {
-            packetSize += MESSAGE_INDEX_LENGTH;
-        }
-
-        if (reliability.isOrdered() || reliability.isSequenced()) {
-            packetSize += ORDER_INDEX_ORDER_CHANNEL_LENGTH;
-        }
-
-        if (split == true) {
-            packetSize += SPLIT_COUNT_SPLIT_ID_SPLIT_INDEX_LENGTH;
-        }
-
-        packetSize += payload.array().length;
-        return packetSize;
+        return EncapsulatedPacket.calculateDummy(reliability, split, payload);
     }
 
 }
@@ -31,24 +31,34 @@
 package me.kernelfreeze.bedrockproxy.raknet.protocol.message.acknowledge;
 
 import me.kernelfreeze.bedrockproxy.raknet.Packet;
+import me.kernelfreeze.bedrockproxy.raknet.RakNet;
 import me.kernelfreeze.bedrockproxy.raknet.RakNetPacket;
-
-import java.util.ArrayList;
-import java.util.Arrays;
+import me.kernelfreeze.bedrockproxy.raknet.util.IntRangeSet;
+import me.kernelfreeze.bedrockproxy.raknet.util.SequenceWindow;
 
 public class Acknowledge extends RakNetPacket {
 
     public static final short ACKNOWLEDGED = 0xC0;
     public static final short NOT_ACKNOWLEDGED = 0xA0;
 
-    public ArrayList<Record> records;
+    /**
+     * The size of the packet ID and the record count.
+     */
+    public static final int HEADER_LENGTH = 3;
+
+    /**
+     * The size of a ranged record, the largest a record can be.
+     */
+    public static final int RANGED_RECORD_LENGTH = 7;
+
+    public final IntRangeSet records;
 
     public Acknowledge(short type) {
         super(type);
         if (type != ACKNOWLEDGED && type != NOT_ACKNOWLEDGED) {
             throw new IllegalArgumentException("Must be ACKNOWLEDGED or NOT_ACKNOWLEDGED");
         }
-        this.records = new ArrayList<Record>();
+        this.records = new IntRangeSet();
     }
 
     public Acknowledge(AcknowledgeType type) {
@@ -57,7 +67,17 @@ public class Acknowledge extends RakNetPacket {
 
     public Acknowledge(Packet packet) {
         super(packet);
-        this.records = new ArrayList<Record>();
+        this.records = new IntRangeSet();
+    }
+
+    /**
+     * @param maximumTransferUnit the maximum transfer unit.
+     * @return the amount of records that are guaranteed to fit in a single
+     * packet.
+     */
+    public static int getMaximumRecords(int maximumTransferUnit) {
+        return Math.min((maximumTransferUnit - HEADER_LENGTH) / RANGED_RECORD_LENGTH,
+                RakNet.MAX_ACKNOWLEDGE_RECORDS);
     }
 
     /**
@@ -69,92 +89,48 @@ public class Acknowledge extends RakNetPacket {
 
     @Override
     public void encode() {
-        this.condenseRecords();
         this.writeUShort(records.size());
-        for (Record record : records) {
-            if (record.isRanged() == false) {
+        for (int i = 0; i < records.size(); i++) {
+            if (records.getStart(i) == records.getEnd(i)) {
                 this.writeByte(0x01); // Record is not ranged
-                this.writeTriadLE(record.getIndex());
+                this.writeTriadLE(records.getStart(i));
             } else {
                 this.writeByte(0x00); // Record is indeed ranged
-                this.writeTriadLE(record.getIndex());
-                this.writeTriadLE(record.getEndIndex());
+                this.writeTriadLE(records.getStart(i));
+                this.writeTriadLE(records.getEnd(i));
             }
         }
     }
 
+    /**
+     * Decodes the records of the packet. Records past
+     * <code>MAX_ACKNOWLEDGE_RECORDS</code> are ignored, as is every index past
+     * the first <code>MAX_ACKNOWLEDGE_SPAN</code> indexes of the packet, so
+     * that a single packet can never make the session walk an unbounded
+     * amount of indexes.
+     */
     @Override
     public void decode() {
-        int size = this.readUShort();
-        for (int i = 0; i < size; i++) {
+        int size = Math.min(this.readUShort(), RakNet.MAX_ACKNOWLEDGE_RECORDS);
+        int span = RakNet.MAX_ACKNOWLEDGE_SPAN;
+        for (int i = 0; i < size && span > 0; i++) {
             boolean ranged = (this.readUByte() == 0x00);
-            if (ranged == false) {
-                records.add(new Record(this.readTriadLE()));
-            } else {
-                records.add(new Record(this.readTriadLE(), this.readTriadLE()));
-            }
-        }
-        this.simplifyRecords();
-    }
-
-    /**
-     * This method condenses the records, converting all single records (ranged
-     * records are converted back to single records through the
-     * <code>toArray</code> method in <code>Record</code>) back to as many
-     * ranged records as possible and then storing the single records that could
-     * not be converted to ranged records. For example, let's say we have
-     * records <code>[1, 2, 3, 4, 5, 66, 77]</code> and the ranged records
-     * <code>[4:7, 12:17]</code>. The output will now be
-     * <code> [1:3, 4:7, 12:17, 66, 77]</code>.
-     */
-    public void condenseRecords() {
-        // Sort everything missing in order for ease of operation
-        int[] packets = Record.toArray(records);
-        Arrays.sort(packets);
-        records.clear(); // Make sure this are no duplicates
-
-        // Let us begin the sorting
-        for (int i = 0; i < packets.length; i++) {
-            int record = packets[i];
-            int last = record;
+            int start = this.readTriadLE();
+            int end = (ranged == true ? this.readTriadLE() : start);
 
-            // Make sure we have room to check if it's ranged
-            if (i + 1 < packets.length) {
-                while (last + 1 == packets[i + 1]) {
-                    last = packets[i + 1];
-                    i++;
-                    if (i + 1 >= packets.length) {
-                        break;
-                    }
-                }
+            // Ranges can wrap around the end of the index space
+            int length = Math.min(SequenceWindow.distance(start, end), span - 1);
+            if (length < 0) {
+                continue; // Backwards range
             }
-            int recordEnd = packets[i];
-
-            // Finally, we add the record
-            if (record == recordEnd) {
-                records.add(new Record(record));
+            end = (start + length) & SequenceWindow.INDEX_MASK;
+            if (end < start) {
+                records.add(start, SequenceWindow.INDEX_MASK);
+                records.add(0, end);
             } else {
-                Record ranged = new Record(record, recordEnd);
-                records.add(ranged);
+                records.add(start, end);
             }
-        }
-    }
-
-    /**
-     * This method simplifies the records, converting the single records and the
-     * ranged records to an ordered array of single records. For example, let's
-     * say we have records <code>[1, 2, 3]</code> and the ranged records
-     * <code>[4:7,
-     * 12:17]</code>. The output will now be
-     * <code>[1, 2, 3, 4, 5, 6, 7, 12, 13, 14, 15, 16,
-     * 17]</code>.
-     */
-    public void simplifyRecords() {
-        // Clone the list then clear it to prevent duplicates
-        int[] packets = Record.toArray(records);
-        records.clear();
-        for (int i = 0; i < packets.length; i++) {
-            records.add(new Record(packets[i]));
+            span -= length + 1;
         }
     }
 
@@ -30,10 +30,6 @@
  */
 package me.kernelfreeze.bedrockproxy.raknet.protocol.message.acknowledge;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
 /**
  * Used for easy record manipulation for packets that use them.
  *
@@ -53,44 +49,6 @@ public class Record {
         this(index, -1);
     }
 
-    /**
-     * @param records the records to convert to an <code>int</code> array.
-     * @return the specified records as an <code>int</code> array.
-     */
-    public static final int[] toArray(Record... records) {
-        // Store all integers into ArrayList as boxed integers
-        ArrayList<Integer> boxedPacketsOld = new ArrayList<Integer>();
-        for (Record record : records) {
-            for (int recordNum : record.toArray()) {
-                boxedPacketsOld.add(new Integer(recordNum));
-            }
-        }
-
-        // Do so again but remove duplicates
-        ArrayList<Integer> boxedPackets = new ArrayList<Integer>();
-        for (Integer boxedPacket : boxedPacketsOld) {
-            if (!boxedPackets.contains(boxedPacket)) {
-                boxedPackets.add(boxedPacket);
-            }
-        }
-
-        // Convert boxed integers to native integers
-        int[] nativePackets = new int[boxedPackets.size()];
-        for (int i = 0; i < nativePackets.length; i++) {
-            nativePackets[i] = boxedPackets.get(i).intValue();
-        }
-        Arrays.sort(nativePackets);
-        return nativePackets;
-    }
-
-    /**
-     * @param records the records to convert to an int array.
-     * @return the specified records as an int array.
-     */
-    public static final int[] toArray(List<Record> records) {
-        return Record.toArray(records.toArray(new Record[records.size()]));
-    }
-
     /**
      * @return the starting index of the record.
      */
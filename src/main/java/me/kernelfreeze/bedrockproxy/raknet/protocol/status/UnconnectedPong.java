@@ -37,6 +37,12 @@ import me.kernelfreeze.bedrockproxy.raknet.protocol.MessageIdentifier;
 
 public class UnconnectedPong extends RakNetPacket {
 
+    /**
+     * The offsets of the ping and pong IDs in an encoded packet.
+     */
+    public static final int PING_ID_OFFSET = 1;
+    public static final int PONG_ID_OFFSET = PING_ID_OFFSET + 8;
+
     public long pingId;
     public long pongId;
     public boolean magic;
@@ -0,0 +1,215 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.server;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.DatagramPacket;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The first handler of every channel bound by the <code>RakNetServer</code>,
+ * used to drop datagrams from addresses that send more than their budget
+ * before anything is allocated for them. Every address gets two token
+ * buckets, one for the datagrams of addresses that have a session and one
+ * for everything else, such as pings and connection requests. The buckets
+ * are kept in a fixed size open addressing table keyed by address, when an
+ * address does not fit the least recently seen address near its slot is
+ * forgotten.
+ * <p>
+ * IPv4 addresses are keyed without allocating, IPv6 addresses are keyed on
+ * all of their 128 bits so that no two clients ever share a bucket.
+ * <p>
+ * A single filter is shared by every channel of the server, so an address
+ * has the same budget no matter how many channels the kernel spreads its
+ * datagrams over. The table is split into groups of slots that are probed
+ * together, each group is guarded by one of a fixed set of locks.
+ *
+ * @author KernelFreeze
+ */
+@ChannelHandler.Sharable
+public class IngressFilter extends ChannelInboundHandlerAdapter {
+
+    private static final int TABLE_SIZE = 4096;
+    private static final int MAX_PROBES = 8; // Also the size of a group
+    private static final int LOCK_COUNT = 64;
+    private static final long TOKEN = 1000L; // Tokens are stored in thousandths
+    private static final long MAX_REFILL_TIME = 60000L;
+
+    private final RakNetServer server;
+    private final Object[] locks;
+    private final byte[] families;
+    private final long[] addressHighs;
+    private final long[] addressLows;
+    private final long[] updateTimes;
+    private final long[] unconnectedTokens;
+    private final long[] connectedTokens;
+    private final LongAdder dropped;
+
+    /**
+     * Constructs an <code>IngressFilter</code> that uses the budgets of the
+     * specified <code>RakNetServer</code>.
+     *
+     * @param server the server.
+     */
+    public IngressFilter(RakNetServer server) {
+        this.server = server;
+        this.locks = new Object[LOCK_COUNT];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.families = new byte[TABLE_SIZE];
+        this.addressHighs = new long[TABLE_SIZE];
+        this.addressLows = new long[TABLE_SIZE];
+        this.updateTimes = new long[TABLE_SIZE];
+        this.unconnectedTokens = new long[TABLE_SIZE];
+        this.connectedTokens = new long[TABLE_SIZE];
+        this.dropped = new LongAdder();
+    }
+
+    /**
+     * @return the amount of datagrams the filter has dropped.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof DatagramPacket) {
+            DatagramPacket datagram = (DatagramPacket) msg;
+            InetSocketAddress sender = datagram.sender();
+
+            // The sender picks the contents, so only a session earns the connected budget
+            if (!datagram.content().isReadable()
+                    || !this.acquire(sender.getAddress(), server.hasSession(sender))) {
+                datagram.release();
+                dropped.increment();
+                return;
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * Takes a token from the bucket of the specified address.
+     *
+     * @param address   the address that sent the datagram.
+     * @param connected whether the address has a session.
+     * @return true if the address had a token left.
+     */
+    private boolean acquire(InetAddress address, boolean connected) {
+        int unconnectedRate = server.getUnconnectedIngressRate();
+        int connectedRate = server.getConnectedIngressRate();
+        long unconnectedBurst = server.getUnconnectedIngressBurst() * TOKEN;
+        long connectedBurst = server.getConnectedIngressBurst() * TOKEN;
+
+        byte family;
+        long high;
+        long low;
+        if (address instanceof Inet4Address) {
+            // Hashing IPv4 addresses returns the address itself without allocating
+            family = 4;
+            high = 0L;
+            low = address.hashCode() & 0xFFFFFFFFL;
+        } else {
+            // There is no way to read an IPv6 address without copying it
+            byte[] bytes = address.getAddress();
+            family = 6;
+            high = toLong(bytes, 0);
+            low = toLong(bytes, 8);
+        }
+
+        long hash = (high * 0x9E3779B97F4A7C15L) ^ low ^ family;
+        int group = (int) ((hash * 0x9E3779B97F4A7C15L) >>> 40) & (TABLE_SIZE / MAX_PROBES - 1);
+        long currentTime = System.currentTimeMillis();
+        synchronized (locks[group & (LOCK_COUNT - 1)]) {
+            int slot = this.find(group * MAX_PROBES, family, high, low, currentTime, unconnectedBurst,
+                    connectedBurst);
+
+            // Refill the buckets of the address, the rates are per second
+            long elapsed = Math.max(0L, Math.min(currentTime - updateTimes[slot], MAX_REFILL_TIME));
+            unconnectedTokens[slot] = Math.min(unconnectedTokens[slot] + elapsed * unconnectedRate,
+                    unconnectedBurst);
+            connectedTokens[slot] = Math.min(connectedTokens[slot] + elapsed * connectedRate, connectedBurst);
+            updateTimes[slot] = currentTime;
+
+            long[] tokens = (connected == true ? this.connectedTokens : this.unconnectedTokens);
+            if (tokens[slot] < TOKEN) {
+                return false;
+            }
+            tokens[slot] -= TOKEN;
+            return true;
+        }
+    }
+
+    /**
+     * Returns the slot of the specified address in the group starting at the
+     * specified slot, taking over the least recently seen slot of the group
+     * with full buckets if it is not in the table. The lock of the group must
+     * be held.
+     */
+    private int find(int start, byte family, long high, long low, long currentTime, long unconnectedBurst,
+                     long connectedBurst) {
+        int victim = start;
+        for (int probe = start; probe < start + MAX_PROBES; probe++) {
+            if (families[probe] == family && addressHighs[probe] == high && addressLows[probe] == low) {
+                return probe;
+            } else if (updateTimes[probe] < updateTimes[victim]) {
+                victim = probe;
+            }
+        }
+        families[victim] = family;
+        addressHighs[victim] = high;
+        addressLows[victim] = low;
+        updateTimes[victim] = currentTime;
+        unconnectedTokens[victim] = unconnectedBurst;
+        connectedTokens[victim] = connectedBurst;
+        return victim;
+    }
+
+    /**
+     * Reads eight bytes of an address as a big endian long.
+     */
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0L;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFFL);
+        }
+        return value;
+    }
+
+}
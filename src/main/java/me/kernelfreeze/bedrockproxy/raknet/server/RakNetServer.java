@@ -33,8 +33,13 @@ package me.kernelfreeze.bedrockproxy.raknet.server;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.socket.nio.NioDatagramChannel;
@@ -52,12 +57,20 @@ import me.kernelfreeze.bedrockproxy.raknet.protocol.status.UnconnectedPong;
 import me.kernelfreeze.bedrockproxy.raknet.session.GeminusRakNetPeer;
 import me.kernelfreeze.bedrockproxy.raknet.session.RakNetClientSession;
 import me.kernelfreeze.bedrockproxy.raknet.session.RakNetState;
+import me.kernelfreeze.bedrockproxy.raknet.session.SessionRegistry;
+import me.kernelfreeze.bedrockproxy.raknet.session.SessionScheduler;
+import me.kernelfreeze.bedrockproxy.raknet.session.congestion.AimdCongestionController;
+import me.kernelfreeze.bedrockproxy.raknet.session.congestion.CongestionController;
+import me.kernelfreeze.bedrockproxy.raknet.util.DatagramEgress;
+import me.kernelfreeze.bedrockproxy.raknet.util.PacketAllocator;
 import me.kernelfreeze.bedrockproxy.raknet.util.RakNetUtils;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static me.kernelfreeze.bedrockproxy.raknet.protocol.MessageIdentifier.*;
 
@@ -76,13 +89,22 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
     private final int maximumTransferUnit;
     // Networking data
     private final Bootstrap bootstrap;
-    private final EventLoopGroup group;
     private final RakNetServerHandler handler;
-    private final ConcurrentHashMap<InetSocketAddress, RakNetClientSession> sessions;
+    private final IngressFilter ingressFilter;
+    private final SessionRegistry<RakNetClientSession> sessions;
+    private EventLoopGroup group;
+    private SessionScheduler<RakNetClientSession>[] schedulers;
+    private int ingressChannels;
+    private volatile int unconnectedIngressRate;
+    private volatile int unconnectedIngressBurst;
+    private volatile int connectedIngressRate;
+    private volatile int connectedIngressBurst;
     private boolean broadcastingEnabled;
-    private Identifier identifier;
+    private volatile Supplier<? extends CongestionController> congestionControl;
+    private volatile Identifier identifier;
+    private volatile byte[] pong;
     // Session data
-    private Channel channel;
+    private volatile Channel[] channels;
     private volatile RakNetServerListener listener;
     private volatile boolean running;
 
@@ -102,19 +124,25 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
         this.port = port;
         this.maxConnections = maxConnections;
         this.maximumTransferUnit = maximumTransferUnit;
+        this.ingressChannels = 1;
+        this.unconnectedIngressRate = RakNet.MAX_UNCONNECTED_PACKETS_PER_SECOND;
+        this.unconnectedIngressBurst = RakNet.MAX_UNCONNECTED_PACKET_BURST;
+        this.connectedIngressRate = RakNet.MAX_PACKETS_PER_SECOND;
+        this.connectedIngressBurst = RakNet.MAX_PACKETS_PER_SECOND;
         this.broadcastingEnabled = true;
         this.identifier = identifier;
 
         // Initiate bootstrap data
         this.bootstrap = new Bootstrap();
-        this.group = new NioEventLoopGroup();
         this.handler = new RakNetServerHandler(this);
+        this.ingressFilter = new IngressFilter(this);
 
         // Set listener
         this.listener = this;
 
         // Create session map
-        this.sessions = new ConcurrentHashMap<InetSocketAddress, RakNetClientSession>();
+        this.sessions = new SessionRegistry<RakNetClientSession>();
+        this.congestionControl = AimdCongestionController::new;
 
         // Check maximum transfer unit
         if (this.maximumTransferUnit < RakNet.MINIMUM_TRANSFER_UNIT) {
@@ -201,6 +229,186 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
         return this.maximumTransferUnit;
     }
 
+    /**
+     * @return the amount of datagram channels the server binds to its port.
+     */
+    public final int getIngressChannels() {
+        return this.ingressChannels;
+    }
+
+    /**
+     * Sets the amount of datagram channels the server will bind to its port.
+     * When this is higher than one and the native epoll transport is available
+     * every channel is bound with <code>SO_REUSEPORT</code> on its own event
+     * loop, letting the kernel spread clients across them. Otherwise the server
+     * falls back to a single NIO channel. This must be called before the server
+     * is started.
+     *
+     * @param ingressChannels the amount of channels to bind.
+     */
+    public final void setIngressChannels(int ingressChannels) {
+        if (ingressChannels < 1) {
+            throw new IllegalArgumentException("There must be at least one ingress channel");
+        }
+        this.ingressChannels = ingressChannels;
+    }
+
+    /**
+     * @return how many unconnected packets, such as pings and connection
+     * requests, a single address may send per second.
+     */
+    public final int getUnconnectedIngressRate() {
+        return this.unconnectedIngressRate;
+    }
+
+    /**
+     * @return how many unconnected packets a single address may send at once.
+     */
+    public final int getUnconnectedIngressBurst() {
+        return this.unconnectedIngressBurst;
+    }
+
+    /**
+     * Sets how many unconnected packets, such as pings and connection
+     * requests, a single address may send. Packets over the limit are dropped
+     * as soon as they are received.
+     *
+     * @param packetsPerSecond how many packets may be sent per second.
+     * @param burst            how many packets may be sent at once.
+     */
+    public final void setUnconnectedIngressLimit(int packetsPerSecond, int burst) {
+        if (packetsPerSecond < 0 || burst < 1) {
+            throw new IllegalArgumentException("Ingress limits must not be negative and allow at least one packet");
+        }
+        this.unconnectedIngressRate = packetsPerSecond;
+        this.unconnectedIngressBurst = burst;
+    }
+
+    /**
+     * @return how many datagrams of connected sessions a single address may
+     * send per second.
+     */
+    public final int getConnectedIngressRate() {
+        return this.connectedIngressRate;
+    }
+
+    /**
+     * @return how many datagrams of connected sessions a single address may
+     * send at once.
+     */
+    public final int getConnectedIngressBurst() {
+        return this.connectedIngressBurst;
+    }
+
+    /**
+     * Sets how many datagrams of connected sessions a single address may send.
+     * Datagrams over the limit are dropped as soon as they are received.
+     *
+     * @param packetsPerSecond how many datagrams may be sent per second.
+     * @param burst            how many datagrams may be sent at once.
+     */
+    public final void setConnectedIngressLimit(int packetsPerSecond, int burst) {
+        if (packetsPerSecond < 0 || burst < 1) {
+            throw new IllegalArgumentException("Ingress limits must not be negative and allow at least one packet");
+        }
+        this.connectedIngressRate = packetsPerSecond;
+        this.connectedIngressBurst = burst;
+    }
+
+    /**
+     * @return the factory used to create the congestion controller of every
+     * new session.
+     */
+    public final Supplier<? extends CongestionController> getCongestionControl() {
+        return this.congestionControl;
+    }
+
+    /**
+     * Sets the factory used to create the congestion controller of every new
+     * session, such as <code>AimdCongestionController::new</code> or
+     * <code>CubicCongestionController::new</code>. Sessions that already exist
+     * keep the controller they were created with.
+     *
+     * @param congestionControl the congestion controller factory.
+     */
+    public final void setCongestionControl(Supplier<? extends CongestionController> congestionControl) {
+        if (congestionControl == null) {
+            throw new NullPointerException();
+        }
+        this.congestionControl = congestionControl;
+    }
+
+    /**
+     * @return the amount of datagrams the server has sent.
+     */
+    public final long getDatagramsSent() {
+        long datagramsSent = 0;
+        for (DatagramEgress egress : this.getEgresses()) {
+            datagramsSent += egress.getDatagramsSent();
+        }
+        return datagramsSent;
+    }
+
+    /**
+     * @return the amount of times the server has flushed its channels.
+     */
+    public final long getEgressFlushes() {
+        long flushes = 0;
+        for (DatagramEgress egress : this.getEgresses()) {
+            flushes += egress.getFlushes();
+        }
+        return flushes;
+    }
+
+    /**
+     * @return the estimated amount of send syscalls the server has made.
+     */
+    public final long getEgressSyscalls() {
+        long syscalls = 0;
+        for (DatagramEgress egress : this.getEgresses()) {
+            syscalls += egress.getSyscalls();
+        }
+        return syscalls;
+    }
+
+    /**
+     * @return the estimated amount of send syscalls the server made in the
+     * last second.
+     */
+    public final long getEgressSyscallsPerSecond() {
+        long syscalls = 0;
+        for (DatagramEgress egress : this.getEgresses()) {
+            syscalls += egress.getSyscallsPerSecond();
+        }
+        return syscalls;
+    }
+
+    /**
+     * @return the amount of datagrams the ingress filter of the server has
+     * dropped.
+     */
+    public final long getIngressDropped() {
+        return ingressFilter.getDropped();
+    }
+
+    /**
+     * @return the egress of every channel the server is bound to.
+     */
+    private final DatagramEgress[] getEgresses() {
+        Channel[] channels = this.channels;
+        if (channels == null) {
+            return new DatagramEgress[0];
+        }
+        DatagramEgress[] egresses = new DatagramEgress[channels.length];
+        int count = 0;
+        for (Channel channel : channels) {
+            if (channel != null) {
+                egresses[count++] = DatagramEgress.of(channel);
+            }
+        }
+        return (count < egresses.length ? Arrays.copyOf(egresses, count) : egresses);
+    }
+
     /**
      * @return true if broadcasting is enabled.
      */
@@ -231,6 +439,36 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      */
     public final void setIdentifier(Identifier identifier) {
         this.identifier = identifier;
+        if (this.running == true) {
+            // Only the event loop of the first channel encodes the pong
+            channels[0].eventLoop().execute(this::refreshPong);
+        }
+    }
+
+    /**
+     * Encodes the <code>UnconnectedPong</code> every ping is answered with.
+     * The listener gets to modify the identifier first, the sender of the
+     * <code>ServerPing</code> is <code>null</code> since the response is
+     * shared by every sender until the next refresh. This is only ever called
+     * on the event loop of the first channel.
+     */
+    private final void refreshPong() {
+        ServerPing pingEvent = new ServerPing(null, this.identifier);
+        RakNetServerListener listener = this.listener;
+        if (listener != null) {
+            listener.handlePing(pingEvent);
+        }
+        if (pingEvent.getIdentifier() == null) {
+            this.pong = null;
+            return;
+        }
+
+        // The ping and pong IDs are written for each response
+        UnconnectedPong pong = new UnconnectedPong();
+        pong.identifier = pingEvent.getIdentifier();
+        pong.encode();
+        this.pong = pong.array();
+        pong.release();
     }
 
     /**
@@ -258,18 +496,14 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * @return the sessions connected to the server.
      */
     public final RakNetClientSession[] getSessions() {
-        synchronized (sessions) {
-            return sessions.values().toArray(new RakNetClientSession[sessions.size()]);
-        }
+        return sessions.values().toArray(new RakNetClientSession[sessions.size()]);
     }
 
     /**
      * @return the amount of sessions connected to the server.
      */
     public final int getSessionCount() {
-        synchronized (sessions) {
-            return sessions.size();
-        }
+        return sessions.size();
     }
 
     /**
@@ -277,9 +511,7 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * @return true server has a session with the specified address.
      */
     public final boolean hasSession(InetSocketAddress address) {
-        synchronized (sessions) {
-            return sessions.containsKey(address);
-        }
+        return sessions.contains(address);
     }
 
     /**
@@ -288,14 +520,7 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * unique ID.
      */
     public final boolean hasSession(long guid) {
-        synchronized (sessions) {
-            for (RakNetClientSession session : sessions.values()) {
-                if (session.getGloballyUniqueId() == guid) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return sessions.contains(guid);
     }
 
     /**
@@ -303,9 +528,7 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * @return a session connected to the server by their address.
      */
     public final RakNetClientSession getSession(InetSocketAddress address) {
-        synchronized (sessions) {
-            return sessions.get(address);
-        }
+        return sessions.get(address);
     }
 
     /**
@@ -313,20 +536,16 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * @return a session connected to the server by their address.
      */
     public final RakNetClientSession getSession(long guid) {
-        synchronized (sessions) {
-            for (RakNetClientSession session : sessions.values()) {
-                if (session.getGloballyUniqueId() == guid) {
-                    return session;
-                }
-            }
-        }
-        return null;
+        return sessions.get(guid);
     }
 
     @Override
     public final void sendMessage(long guid, Reliability reliability, int channel, Packet packet) {
-        if (this.hasSession(guid)) {
-            this.getSession(guid).sendMessage(reliability, channel, packet);
+        RakNetClientSession session = sessions.get(guid);
+        if (session != null) {
+            session.sendMessage(reliability, channel, packet);
+        } else {
+            packet.release();
         }
     }
 
@@ -337,17 +556,24 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * @param reason  the reason the session was removed.
      */
     public final void removeSession(InetSocketAddress address, String reason) {
-        synchronized (sessions) {
-            if (sessions.containsKey(address)) {
-                RakNetClientSession session = sessions.get(address);
-                if (session.getState() == RakNetState.CONNECTED) {
-                    listener.onClientDisconnect(session, reason);
-                } else {
-                    listener.onClientPreDisconnect(address, reason);
-                }
-                session.sendMessage(Reliability.UNRELIABLE, ID_DISCONNECTION_NOTIFICATION);
-                sessions.remove(address);
+        RakNetClientSession session = sessions.get(address);
+        if (session == null) {
+            return; // No session to remove
+        } else if (!session.getEventLoop().inEventLoop()) {
+            session.getEventLoop().execute(() -> this.removeSession(address, reason));
+            return;
+        }
+
+        // Only the event loop of the session removes it
+        if (sessions.remove(session)) {
+            if (session.getState() == RakNetState.CONNECTED) {
+                listener.onClientDisconnect(session, reason);
+            } else {
+                listener.onClientPreDisconnect(address, reason);
             }
+            session.sendMessage(Reliability.UNRELIABLE, ID_DISCONNECTION_NOTIFICATION);
+            this.getScheduler(session.getChannel()).unregister(session);
+            session.release();
         }
     }
 
@@ -388,11 +614,9 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * @param time    how long the address will blocked in milliseconds.
      */
     public final void blockAddress(InetAddress address, String reason, long time) {
-        synchronized (sessions) {
-            for (InetSocketAddress clientAddress : sessions.keySet()) {
-                if (clientAddress.getAddress().equals(address)) {
-                    this.removeSession(clientAddress, reason);
-                }
+        for (RakNetClientSession session : sessions.values()) {
+            if (session.getInetAddress().equals(address)) {
+                this.removeSession(session, reason);
             }
         }
         handler.blockAddress(address, reason, time);
@@ -433,7 +657,7 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * @param cause   the exception caught by the handler.
      */
     protected final void handleHandlerException(InetSocketAddress address, Throwable cause) {
-        if (this.hasSession(address)) {
+        if (address != null && this.hasSession(address)) {
             this.removeSession(address, cause.getClass().getName());
         }
         listener.onHandlerException(address, cause);
@@ -442,10 +666,11 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
     /**
      * Handles a packet received by the handler.
      *
-     * @param packet the packet to handle.
-     * @param sender the address of the sender.
+     * @param packet  the packet to handle.
+     * @param sender  the address of the sender.
+     * @param channel the channel the packet was received on.
      */
-    protected final void handleMessage(RakNetPacket packet, InetSocketAddress sender) {
+    protected final void handleMessage(RakNetPacket packet, InetSocketAddress sender, Channel channel) {
         short packetId = packet.getId();
 
         if (packetId == ID_UNCONNECTED_PING || packetId == ID_UNCONNECTED_PING_OPEN_CONNECTIONS) {
@@ -453,33 +678,22 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
             ping.decode();
 
             // Make sure parameters match and that broadcasting is enabled
-            synchronized (sessions) {
-                if ((packetId == ID_UNCONNECTED_PING || sessions.size() < this.maxConnections)
-                        && this.broadcastingEnabled == true) {
-                    ServerPing pingEvent = new ServerPing(sender, identifier);
-                    listener.handlePing(pingEvent);
-
-                    if (ping.magic == true && pingEvent.getIdentifier() != null) {
-                        UnconnectedPong pong = new UnconnectedPong();
-                        pong.pingId = ping.timestamp;
-                        pong.pongId = this.getTimestamp();
-                        pong.identifier = pingEvent.getIdentifier();
-
-                        pong.encode();
-                        this.sendNettyMessage(pong, sender);
-                    }
-                }
+            byte[] pong = this.pong;
+            if ((packetId == ID_UNCONNECTED_PING || sessions.size() < this.maxConnections)
+                    && this.broadcastingEnabled == true && ping.magic == true && pong != null) {
+                // Copy the cached response and fill in the ping and pong IDs
+                ByteBuf response = PacketAllocator.buffer(pong.length).writeBytes(pong);
+                response.setLong(UnconnectedPong.PING_ID_OFFSET, ping.timestamp);
+                response.setLong(UnconnectedPong.PONG_ID_OFFSET, this.getTimestamp());
+                this.sendNettyMessage(response, sender, channel);
             }
         } else if (packetId == ID_OPEN_CONNECTION_REQUEST_1) {
             OpenConnectionRequestOne connectionRequestOne = new OpenConnectionRequestOne(packet);
             connectionRequestOne.decode();
 
-            synchronized (sessions) {
-                if (sessions.containsKey(sender)) {
-                    if (sessions.get(sender).getState().equals(RakNetState.CONNECTED)) {
-                        this.removeSession(sender, "Client re-instantiated connection");
-                    }
-                }
+            RakNetClientSession session = sessions.get(sender);
+            if (session != null && session.getState().equals(RakNetState.CONNECTED)) {
+                this.removeSession(sender, "Client re-instantiated connection");
             }
 
             if (connectionRequestOne.magic == true) {
@@ -492,7 +706,7 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
                         incompatibleProtocol.networkProtocol = this.getProtocolVersion();
                         incompatibleProtocol.serverGuid = this.guid;
                         incompatibleProtocol.encode();
-                        this.sendNettyMessage(incompatibleProtocol, sender);
+                        this.sendNettyMessage(incompatibleProtocol, sender, channel);
                     } else {
                         // Everything passed, one last check...
                         if (connectionRequestOne.maximumTransferUnit <= this.maximumTransferUnit) {
@@ -500,11 +714,11 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
                             connectionResponseOne.serverGuid = this.guid;
                             connectionResponseOne.maximumTransferUnit = connectionRequestOne.maximumTransferUnit;
                             connectionResponseOne.encode();
-                            this.sendNettyMessage(connectionResponseOne, sender);
+                            this.sendNettyMessage(connectionResponseOne, sender, channel);
                         }
                     }
                 } else {
-                    this.sendNettyMessage(errorPacket, sender);
+                    this.sendNettyMessage(errorPacket, sender, channel);
                 }
             }
         } else if (packetId == ID_OPEN_CONNECTION_REQUEST_2) {
@@ -517,7 +731,7 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
                 if (errorPacket == null) {
                     if (this.hasSession(connectionRequestTwo.clientGuid)) {
                         // This client is already connected
-                        this.sendNettyMessage(ID_ALREADY_CONNECTED, sender);
+                        this.sendNettyMessage(new RakNetPacket(ID_ALREADY_CONNECTED), sender, channel);
                     } else {
                         // Everything passed, one last check...
                         if (connectionRequestTwo.maximumTransferUnit <= this.maximumTransferUnit) {
@@ -534,41 +748,41 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
                                 this.getListener().onClientPreConnect(sender);
 
                                 // Create session
-                                synchronized (sessions) {
-                                    RakNetClientSession clientSession = new RakNetClientSession(this,
-                                            System.currentTimeMillis(), connectionRequestTwo.clientGuid,
-                                            connectionRequestTwo.maximumTransferUnit, channel, sender);
-                                    sessions.put(sender, clientSession);
+                                RakNetClientSession clientSession = new RakNetClientSession(this,
+                                        System.currentTimeMillis(), connectionRequestTwo.clientGuid,
+                                        connectionRequestTwo.maximumTransferUnit, channel, sender);
+                                clientSession.setCongestionController(congestionControl.get());
+                                if (sessions.add(clientSession)) {
+                                    this.getScheduler(channel).register(clientSession);
+
+                                    // Send response, we are ready for login
+                                    this.sendNettyMessage(connectionResponseTwo, sender, channel);
+                                } else {
+                                    this.sendNettyMessage(new RakNetPacket(ID_ALREADY_CONNECTED), sender, channel);
                                 }
-
-                                // Send response, we are ready for login
-                                this.sendNettyMessage(connectionResponseTwo, sender);
                             }
                         }
                     }
                 } else {
-                    this.sendNettyMessage(errorPacket, sender);
+                    this.sendNettyMessage(errorPacket, sender, channel);
                 }
             }
         } else if (packetId >= ID_CUSTOM_0 && packetId <= ID_CUSTOM_F) {
-            synchronized (sessions) {
-                if (sessions.containsKey(sender)) {
-                    CustomPacket custom = new CustomPacket(packet);
-                    custom.decode();
+            // Datagrams that reach the wrong event loop are dropped and recovered
+            RakNetClientSession session = sessions.get(sender);
+            if (session != null && session.getEventLoop().inEventLoop()) {
+                CustomPacket custom = new CustomPacket(packet);
+                custom.decode();
 
-                    RakNetClientSession session = sessions.get(sender);
-                    session.handleCustom(custom);
-                }
+                session.handleCustom(custom);
             }
         } else if (packetId == Acknowledge.ACKNOWLEDGED || packetId == Acknowledge.NOT_ACKNOWLEDGED) {
-            synchronized (sessions) {
-                if (sessions.containsKey(sender)) {
-                    Acknowledge acknowledge = new Acknowledge(packet);
-                    acknowledge.decode();
+            RakNetClientSession session = sessions.get(sender);
+            if (session != null && session.getEventLoop().inEventLoop()) {
+                Acknowledge acknowledge = new Acknowledge(packet);
+                acknowledge.decode();
 
-                    RakNetClientSession session = sessions.get(sender);
-                    session.handleAcknowledge(acknowledge);
-                }
+                session.handleAcknowledge(acknowledge);
             }
         }
     }
@@ -610,7 +824,32 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * @param address the address to send the buffer to.
      */
     public final void sendNettyMessage(ByteBuf buf, InetSocketAddress address) {
-        channel.writeAndFlush(new DatagramPacket(buf, address));
+        RakNetClientSession session = sessions.get(address);
+        this.sendNettyMessage(buf, address, (session != null ? session.getChannel() : channels[0]));
+    }
+
+    /**
+     * Sends a raw message to the specified address through the specified
+     * channel.
+     *
+     * @param buf     the buffer to send.
+     * @param address the address to send the buffer to.
+     * @param channel the channel to send the buffer through.
+     */
+    private final void sendNettyMessage(ByteBuf buf, InetSocketAddress address, Channel channel) {
+        DatagramEgress.of(channel).send(new DatagramPacket(buf, address));
+    }
+
+    /**
+     * Sends a raw message to the specified address through the specified
+     * channel.
+     *
+     * @param packet  the packet to send.
+     * @param address the address to send the packet to.
+     * @param channel the channel to send the packet through.
+     */
+    private final void sendNettyMessage(Packet packet, InetSocketAddress address, Channel channel) {
+        this.sendNettyMessage(packet.transferBuffer(), address, channel);
     }
 
     /**
@@ -625,7 +864,7 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      * @param address the address to send the buffer to.
      */
     public final void sendNettyMessage(Packet packet, InetSocketAddress address) {
-        this.sendNettyMessage(packet.buffer(), address);
+        this.sendNettyMessage(packet.transferBuffer(), address);
     }
 
     /**
@@ -654,38 +893,116 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
             throw new NoListenerException();
         }
 
-        // Create bootstrap and bind the channel
+        // Use SO_REUSEPORT on the native transport if multiple channels are wanted
+        boolean reusePort = (this.ingressChannels > 1 && Epoll.isAvailable());
+        int channelCount = (reusePort ? this.ingressChannels : 1);
+        if (reusePort) {
+            this.group = new EpollEventLoopGroup(channelCount);
+            bootstrap.channel(EpollDatagramChannel.class).option(EpollChannelOption.SO_REUSEPORT, true);
+        } else {
+            this.group = new NioEventLoopGroup();
+            bootstrap.channel(NioDatagramChannel.class);
+        }
+
+        // Create bootstrap and bind the channels, each one gets its own event loop
         try {
-            bootstrap.channel(NioDatagramChannel.class).group(group).handler(handler);
-            bootstrap.option(ChannelOption.SO_BROADCAST, true).option(ChannelOption.SO_REUSEADDR, false);
-            this.channel = bootstrap.bind(port).sync().channel();
+            bootstrap.group(group).handler(new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel channel) {
+                    // Over budget datagrams are dropped before anything else sees them
+                    channel.pipeline().addLast(ingressFilter, handler);
+                }
+            });
+            bootstrap.option(ChannelOption.SO_BROADCAST, true).option(ChannelOption.SO_REUSEADDR, false)
+                    .option(ChannelOption.ALLOCATOR, PacketAllocator.getAllocator());
+            this.channels = new Channel[channelCount];
+            this.schedulers = newSchedulers(channelCount);
+            for (int i = 0; i < channels.length; i++) {
+                channels[i] = bootstrap.bind(port).sync().channel();
+
+                // Sessions are updated on the event loop of their channel
+                schedulers[i] = new SessionScheduler<RakNetClientSession>(channels[i].eventLoop(),
+                        this::updateSession);
+                schedulers[i].start();
+            }
             this.running = true;
+
+            // Keep the ping response up to date
+            channels[0].eventLoop().scheduleAtFixedRate(this::refreshPong, 0L, RakNet.PONG_REFRESH_INTERVAL,
+                    TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
             e.printStackTrace();
-            this.running = false;
+            this.shutdown();
+            return;
         }
 
         // Notify API
         listener.onServerStart();
 
-        // Update system
-        while (this.running == true) {
-            synchronized (sessions) {
-                for (RakNetClientSession session : sessions.values()) {
-                    try {
-                        // Update session and make sure it isn't DOSing us
-                        session.update();
-                        if (session.getPacketsReceivedThisSecond() >= RakNet.MAX_PACKETS_PER_SECOND) {
-                            this.blockAddress(session.getInetAddress(), "Too many packets",
-                                    RakNet.MAX_PACKETS_PER_SECOND_BLOCK);
-                        }
-                    } catch (Throwable throwable) {
-                        // An error related to the session occurred, remove it
-                        listener.onSessionException(session, throwable);
-                        this.removeSession(session, throwable.getMessage());
-                    }
-                }
+        // Wait until the server is shutdown, the scheduler does the rest
+        for (Channel channel : channels) {
+            channel.closeFuture().syncUninterruptibly();
+        }
+    }
+
+    /**
+     * Starts the server on a channel that is already open instead of binding
+     * one, such as an <code>EmbeddedChannel</code>. The pipeline of the
+     * channel is set up the same way as the pipeline of a bound channel.
+     *
+     * @param channel the channel to start on.
+     */
+    final void start(Channel channel) {
+        channel.pipeline().addLast(ingressFilter, handler);
+        this.channels = new Channel[]{channel};
+        this.schedulers = newSchedulers(1);
+        schedulers[0] = new SessionScheduler<RakNetClientSession>(channel.eventLoop(), this::updateSession);
+        schedulers[0].start();
+        this.running = true;
+        this.refreshPong(); // The caller is the channel's event loop
+    }
+
+    /**
+     * @param length the length of the array.
+     * @return a new array for the schedulers of the channels.
+     */
+    @SuppressWarnings("unchecked")
+    private static SessionScheduler<RakNetClientSession>[] newSchedulers(int length) {
+        return (SessionScheduler<RakNetClientSession>[]) new SessionScheduler<?>[length];
+    }
+
+    /**
+     * @param channel the channel the scheduler belongs to.
+     * @return the scheduler that updates the sessions of the specified
+     * channel.
+     */
+    private final SessionScheduler<RakNetClientSession> getScheduler(Channel channel) {
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i] == channel) {
+                return schedulers[i];
+            }
+        }
+        throw new IllegalArgumentException("Channel does not belong to this server");
+    }
+
+    /**
+     * Updates a session, this is called by the scheduler whenever one of the
+     * session's deadlines has been reached or it has data to send.
+     *
+     * @param session the session to update.
+     */
+    private final void updateSession(RakNetClientSession session) {
+        try {
+            // Make sure it isn't DOSing us and update the session
+            if (session.getPacketsReceivedThisSecond() >= RakNet.MAX_PACKETS_PER_SECOND) {
+                this.blockAddress(session.getInetAddress(), "Too many packets", RakNet.MAX_PACKETS_PER_SECOND_BLOCK);
+                return;
             }
+            session.update();
+        } catch (Throwable throwable) {
+            // An error related to the session occurred, remove it
+            listener.onSessionException(session, throwable);
+            this.removeSession(session, throwable.getMessage());
         }
     }
 
@@ -720,11 +1037,29 @@ public class RakNetServer implements GeminusRakNetPeer, RakNetServerListener {
      */
     public final void shutdown() {
         this.running = false;
-        synchronized (sessions) {
-            for (RakNetClientSession session : sessions.values()) {
-                this.removeSession(session, "Server shutdown");
+        for (RakNetClientSession session : sessions.values()) {
+            this.removeSession(session, "Server shutdown");
+        }
+
+        // Stop updating sessions
+        if (schedulers != null) {
+            for (SessionScheduler<RakNetClientSession> scheduler : schedulers) {
+                if (scheduler != null) {
+                    scheduler.stop();
+                }
             }
-            sessions.clear();
+        }
+
+        // Close the channels and their event loops
+        if (channels != null) {
+            for (Channel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+        if (group != null) {
+            group.shutdownGracefully();
         }
         listener.onServerShutdown();
     }
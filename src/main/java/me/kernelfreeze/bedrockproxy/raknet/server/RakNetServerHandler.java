@@ -30,26 +30,31 @@
  */
 package me.kernelfreeze.bedrockproxy.raknet.server;
 
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.AttributeKey;
 import me.kernelfreeze.bedrockproxy.raknet.RakNetPacket;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Used by the <code>RakNetServer</code> with the sole purpose of sending
- * received packets to the server so they can be handled.
+ * received packets to the server so they can be handled. A single handler is
+ * shared by every channel the server has bound.
  *
  * @author MarfGamer
  */
+@ChannelHandler.Sharable
 public class RakNetServerHandler extends ChannelInboundHandlerAdapter {
 
+    private static final AttributeKey<InetSocketAddress> CAUSE_ADDRESS = AttributeKey.valueOf("raknet-cause-address");
+
     private final RakNetServer server;
-    private final HashMap<InetAddress, BlockedAddress> blocked;
-    private InetSocketAddress causeAddress;
+    private final ConcurrentHashMap<InetAddress, BlockedAddress> blocked;
 
     /**
      * Constructs a <code>RakNetClientServer</code> with the specified
@@ -59,7 +64,7 @@ public class RakNetServerHandler extends ChannelInboundHandlerAdapter {
      */
     public RakNetServerHandler(RakNetServer server) {
         this.server = server;
-        this.blocked = new HashMap<InetAddress, BlockedAddress>();
+        this.blocked = new ConcurrentHashMap<InetAddress, BlockedAddress>();
     }
 
     /**
@@ -101,37 +106,44 @@ public class RakNetServerHandler extends ChannelInboundHandlerAdapter {
             // Get packet and sender data
             DatagramPacket datagram = (DatagramPacket) msg;
             InetSocketAddress sender = datagram.sender();
+            if (!datagram.content().isReadable()) {
+                datagram.release();
+                return; // Empty, there is not even an ID to read
+            }
             RakNetPacket packet = new RakNetPacket(datagram);
 
-            // If an exception happens it's because of this address
-            this.causeAddress = sender;
+            try {
+                // If an exception happens it's because of this address
+                ctx.channel().attr(CAUSE_ADDRESS).set(sender);
 
-            // Is the sender blocked?
-            if (this.addressBlocked(sender.getAddress())) {
-                BlockedAddress status = blocked.get(sender.getAddress());
-                if (status.getTime() <= BlockedAddress.PERMANENT_BLOCK) {
-                    return; // Permanently blocked
-                }
-                if (System.currentTimeMillis() - status.getStartTime() < status.getTime()) {
-                    return; // Time hasn't expired
+                // Is the sender blocked?
+                if (this.addressBlocked(sender.getAddress())) {
+                    BlockedAddress status = blocked.get(sender.getAddress());
+                    if (status.getTime() <= BlockedAddress.PERMANENT_BLOCK) {
+                        return; // Permanently blocked
+                    }
+                    if (System.currentTimeMillis() - status.getStartTime() < status.getTime()) {
+                        return; // Time hasn't expired
+                    }
+                    this.unblockAddress(sender.getAddress());
                 }
-                this.unblockAddress(sender.getAddress());
-            }
 
-            // Handle the packet and release the buffer
-            server.handleMessage(packet, sender);
-            datagram.content().readerIndex(0); // Reset position
-            server.getListener().handleNettyMessage(datagram.content(), sender);
-            datagram.content().release(); // No longer needed
+                // Handle the packet
+                server.handleMessage(packet, sender, ctx.channel());
+                datagram.content().readerIndex(0); // Reset position
+                server.getListener().handleNettyMessage(datagram.content(), sender);
 
-            // No exceptions occurred, release the suspect
-            this.causeAddress = null;
+                // No exceptions occurred, release the suspect
+                ctx.channel().attr(CAUSE_ADDRESS).set(null);
+            } finally {
+                packet.release(); // The packet owns the datagram buffer
+            }
         }
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        server.handleHandlerException(this.causeAddress, cause);
+        server.handleHandlerException(ctx.channel().attr(CAUSE_ADDRESS).getAndSet(null), cause);
     }
 
 }
\ No newline at end of file
@@ -60,9 +60,12 @@ public interface RakNetServerListener {
     }
 
     /**
-     * Called when the server receives a ping from a client.
+     * Called when the response sent to pinging clients is refreshed, this
+     * happens every <code>PONG_REFRESH_INTERVAL</code> milliseconds instead
+     * of once per ping. The sender of the ping is always <code>null</code>,
+     * since the response is shared by every client.
      *
-     * @param ping the response that will be sent to the client.
+     * @param ping the response that will be sent to the clients.
      */
     default void handlePing(ServerPing ping) {
     }
@@ -152,7 +155,9 @@ public interface RakNetServerListener {
 
     /**
      * Called when a packet has been received from a client and is ready to be
-     * handled.
+     * handled. The packet shares the data of the received datagram and is only
+     * valid until this method returns, it must be copied or retained to be
+     * kept.
      *
      * @param session the client that sent the packet.
      * @param packet  the packet received from the client.
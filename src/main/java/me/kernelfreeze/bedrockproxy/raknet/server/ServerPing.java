@@ -58,7 +58,8 @@ public class ServerPing {
     }
 
     /**
-     * @return the address of the ping sender.
+     * @return the address of the ping sender, <code>null</code> if the
+     * response is shared by every sender.
      */
     public InetSocketAddress getSender() {
         return this.sender;
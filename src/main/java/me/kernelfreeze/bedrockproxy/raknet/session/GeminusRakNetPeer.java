@@ -51,7 +51,8 @@ public interface GeminusRakNetPeer {
      * @param guid        the globally unique ID of the session.
      * @param reliability the reliability of the packet.
      * @param channel     the channel to send the packet on.
-     * @param packet      the packet to send.
+     * @param packet      the packet to send, the peer takes ownership of it and
+     *                    releases it once it is no longer needed.
      * @throws InvalidChannelException if the channel is higher than the maximum.
      */
     void sendMessage(long guid, Reliability reliability, int channel, Packet packet);
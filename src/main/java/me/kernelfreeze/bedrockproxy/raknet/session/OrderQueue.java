@@ -0,0 +1,156 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.session;
+
+import me.kernelfreeze.bedrockproxy.raknet.RakNet;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.message.EncapsulatedPacket;
+import me.kernelfreeze.bedrockproxy.raknet.util.SequenceWindow;
+
+/**
+ * Used to hold ordered messages of a single channel until every message
+ * before them has been received. Messages are kept in a ring indexed by their
+ * order index, starting at the index the channel is waiting for. The ring
+ * starts small and doubles in size as messages arrive further ahead, up to
+ * <code>ORDER_WINDOW_SIZE</code> messages.
+ *
+ * @author KernelFreeze
+ */
+public class OrderQueue {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private EncapsulatedPacket[] messages;
+    private int mask;
+    private int size;
+    private int orderIndex;
+
+    /**
+     * Constructs an empty <code>OrderQueue</code> waiting for the first order
+     * index.
+     */
+    public OrderQueue() {
+        this.messages = new EncapsulatedPacket[DEFAULT_CAPACITY];
+        this.mask = DEFAULT_CAPACITY - 1;
+    }
+
+    /**
+     * @return the amount of messages waiting in the queue.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the order index the channel is waiting for.
+     */
+    public int getOrderIndex() {
+        return this.orderIndex;
+    }
+
+    /**
+     * Queues the specified message until it can be handled. The queue takes
+     * ownership of the payload of the message if it was queued.
+     *
+     * @param encapsulated the message to queue.
+     * @return true if the message was queued, false if it has already been
+     * handled or is already waiting in the queue.
+     * @throws OrderQueueOverloadException if the message is too far ahead of
+     *                                     the message the channel is waiting
+     *                                     for.
+     */
+    public boolean add(EncapsulatedPacket encapsulated) throws OrderQueueOverloadException {
+        int distance = SequenceWindow.distance(this.orderIndex, encapsulated.orderIndex);
+        if (distance < 0) {
+            return false; // Already handled
+        } else if (distance >= RakNet.ORDER_WINDOW_SIZE) {
+            throw new OrderQueueOverloadException();
+        }
+        while (distance > mask) {
+            this.grow();
+        }
+
+        int slot = encapsulated.orderIndex & mask;
+        if (messages[slot] != null) {
+            return false; // Already waiting
+        }
+        messages[slot] = encapsulated;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Removes the message the channel is waiting for and moves on to the next
+     * order index.
+     *
+     * @return the message the channel was waiting for, <code>null</code> if
+     * it has not been received yet.
+     */
+    public EncapsulatedPacket poll() {
+        int slot = this.orderIndex & mask;
+        EncapsulatedPacket encapsulated = messages[slot];
+        if (encapsulated != null) {
+            messages[slot] = null;
+            this.orderIndex = (orderIndex + 1) & SequenceWindow.INDEX_MASK;
+            this.size--;
+        }
+        return encapsulated;
+    }
+
+    /**
+     * Releases the payloads of every message waiting in the queue and removes
+     * them.
+     */
+    public void release() {
+        for (int i = 0; i < messages.length; i++) {
+            if (messages[i] != null) {
+                messages[i].payload.release();
+                messages[i] = null;
+            }
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Doubles the size of the ring, moving every message to the slot of its
+     * order index in the new ring.
+     */
+    private void grow() {
+        EncapsulatedPacket[] grown = new EncapsulatedPacket[messages.length << 1];
+        int grownMask = grown.length - 1;
+        for (int i = 0; i < messages.length; i++) {
+            int index = (orderIndex + i) & SequenceWindow.INDEX_MASK;
+            grown[index & grownMask] = messages[index & mask];
+        }
+        this.messages = grown;
+        this.mask = grownMask;
+    }
+
+}
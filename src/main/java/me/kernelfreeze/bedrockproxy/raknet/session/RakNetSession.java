@@ -30,8 +30,11 @@
  */
 package me.kernelfreeze.bedrockproxy.raknet.session;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
 import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.internal.PlatformDependent;
 import me.kernelfreeze.bedrockproxy.raknet.Packet;
 import me.kernelfreeze.bedrockproxy.raknet.RakNet;
 import me.kernelfreeze.bedrockproxy.raknet.RakNetPacket;
@@ -43,17 +46,30 @@ import me.kernelfreeze.bedrockproxy.raknet.protocol.message.acknowledge.Acknowle
 import me.kernelfreeze.bedrockproxy.raknet.protocol.message.acknowledge.Record;
 import me.kernelfreeze.bedrockproxy.raknet.protocol.status.ConnectedPing;
 import me.kernelfreeze.bedrockproxy.raknet.protocol.status.ConnectedPong;
+import me.kernelfreeze.bedrockproxy.raknet.session.congestion.AimdCongestionController;
+import me.kernelfreeze.bedrockproxy.raknet.session.congestion.CongestionController;
+import me.kernelfreeze.bedrockproxy.raknet.util.DatagramEgress;
+import me.kernelfreeze.bedrockproxy.raknet.util.IntRangeSet;
+import me.kernelfreeze.bedrockproxy.raknet.util.PacketAllocator;
+import me.kernelfreeze.bedrockproxy.raknet.util.SequenceWindow;
 import me.kernelfreeze.bedrockproxy.raknet.util.map.IntMap;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static me.kernelfreeze.bedrockproxy.raknet.protocol.MessageIdentifier.*;
 
 /**
  * This class is used to easily manage connections in RakNet.
+ * <p>
+ * A session is pinned to the <code>EventLoop</code> of its channel, all of
+ * its state is only ever touched from that thread. Messages sent from other
+ * threads are handed over through a queue and picked up by the event loop.
  *
  * @author MarfGamer
  */
@@ -63,16 +79,19 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
     private final long guid;
     private final int maximumTransferUnit;
     private final Channel channel;
+    private final EventLoop eventLoop;
+    private final DatagramEgress egress;
     private final InetSocketAddress address;
-    private final ArrayList<Integer> reliables;
+    private final SequenceWindow reliables;
     private final IntMap<SplitPacket> splitQueue;
-    private final ArrayList<EncapsulatedPacket> sendQueue;
-    private final IntMap<EncapsulatedPacket[]> recoveryQueue;
+    private final Queue<EncapsulatedPacket> pendingQueue;
+    private final ArrayDeque<EncapsulatedPacket> sendQueue;
+    private final RecoveryQueue recoveryQueue;
     private final int[] orderSendIndex;
-    private final int[] orderReceiveIndex;
     private final int[] sequenceSendIndex;
     private final int[] sequenceReceiveIndex;
-    private final IntMap<IntMap<EncapsulatedPacket>> handleQueue;
+    private final OrderQueue[] orderQueues;
+    private volatile boolean released;
     private RakNetState state;
     private int keepAliveState;
     // Timing
@@ -81,7 +100,7 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
     private long lastPacketCounterResetTime;
     private long lastPacketSendTime;
     private long lastPacketReceiveTime;
-    private long lastRecoverySendTime;
+    private long nextRecoveryTime;
     private long lastKeepAliveSendTime;
     private long lastPingSendTime;
     // Packet data
@@ -90,6 +109,11 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
     // Ordering and sequencing
     private int sendSequenceNumber;
     private int receiveSequenceNumber;
+    private final SequenceWindow receiveWindow;
+    private final IntRangeSet acknowledgeQueue;
+    private final long[] holeTimes;
+    private int nackIndex;
+    private long nextNackTime;
     // Latency detection
     private boolean latencyEnabled;
     private int pongsReceived;
@@ -99,6 +123,23 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
     private long lastLatency;
     private long lowestLatency;
     private long highestLatency;
+    // Retransmission
+    private long smoothedRoundTripTime;
+    private long roundTripTimeVariance;
+    private long retransmissionTimeout;
+    private long retransmissions;
+    private int splitSize;
+    private long splitPacketsEvicted;
+    private long splitPacketsExpired;
+    private long splitDatagramsRefused;
+    private CongestionController congestionController;
+    // Scheduling, only modified by the SessionScheduler
+    volatile SessionScheduler<?> scheduler;
+    final AtomicBoolean woken;
+    RakNetSession wheelPrev;
+    RakNetSession wheelNext;
+    int wheelSlot;
+    long wheelRounds;
 
     /**
      * Constructs a <code>RakNetSession</code> with the specified globally
@@ -114,6 +155,8 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         this.guid = guid;
         this.maximumTransferUnit = maximumTransferUnit;
         this.channel = channel;
+        this.eventLoop = channel.eventLoop();
+        this.egress = DatagramEgress.of(channel);
         this.address = address;
         this.state = RakNetState.DISCONNECTED;
         this.keepAliveState = RakNetState.CONNECTED.getOrder();
@@ -122,20 +165,22 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         this.lastPacketReceiveTime = System.currentTimeMillis();
 
         // Packet data
-        this.reliables = new ArrayList<Integer>();
+        this.reliables = new SequenceWindow(RakNet.RELIABLE_WINDOW_SIZE);
         this.splitQueue = new IntMap<SplitPacket>();
-        this.sendQueue = new ArrayList<EncapsulatedPacket>();
-        this.recoveryQueue = new IntMap<EncapsulatedPacket[]>();
+        this.pendingQueue = PlatformDependent.newMpscQueue();
+        this.sendQueue = new ArrayDeque<EncapsulatedPacket>();
+        this.recoveryQueue = new RecoveryQueue();
 
         // Ordering and sequencing
+        this.receiveSequenceNumber = SequenceWindow.INDEX_MASK; // One before the first
+        this.receiveWindow = new SequenceWindow(RakNet.RECEIVE_WINDOW_SIZE);
+        this.acknowledgeQueue = new IntRangeSet();
+        this.holeTimes = new long[RakNet.RECEIVE_WINDOW_SIZE];
+        this.nextNackTime = Long.MAX_VALUE;
         this.orderSendIndex = new int[RakNet.MAX_CHANNELS];
-        this.orderReceiveIndex = new int[RakNet.MAX_CHANNELS];
         this.sequenceSendIndex = new int[RakNet.MAX_CHANNELS];
         this.sequenceReceiveIndex = new int[RakNet.MAX_CHANNELS];
-        this.handleQueue = new IntMap<IntMap<EncapsulatedPacket>>();
-        for (int i = 0; i < RakNet.MAX_CHANNELS; i++) {
-            handleQueue.put(i, new IntMap<EncapsulatedPacket>());
-        }
+        this.orderQueues = new OrderQueue[RakNet.MAX_CHANNELS];
 
         // Latency detection
         this.latencyEnabled = true;
@@ -143,6 +188,16 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         this.lastLatency = -1;
         this.lowestLatency = -1;
         this.highestLatency = -1;
+
+        // Retransmission
+        this.nextRecoveryTime = Long.MAX_VALUE;
+        this.smoothedRoundTripTime = -1; // No samples yet
+        this.retransmissionTimeout = RakNet.INITIAL_RETRANSMISSION_TIMEOUT;
+        this.congestionController = new AimdCongestionController();
+
+        // Scheduling
+        this.woken = new AtomicBoolean();
+        this.wheelSlot = -1;
     }
 
     /**
@@ -152,6 +207,20 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         return this.guid;
     }
 
+    /**
+     * @return the channel the session sends and receives data through.
+     */
+    public final Channel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * @return the event loop the session is pinned to.
+     */
+    public final EventLoop getEventLoop() {
+        return this.eventLoop;
+    }
+
     /**
      * @return the session's address.
      */
@@ -194,6 +263,7 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
      */
     public void setState(RakNetState state) {
         this.state = state;
+        this.wake(); // Keep alive deadlines depend on the state
     }
 
     /**
@@ -228,6 +298,96 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         return this.packetsSentThisSecond;
     }
 
+    /**
+     * @return the smoothed round trip time of the session, or -1 if no
+     * datagram has been acknowledged yet.
+     */
+    public long getRoundTripTime() {
+        return this.smoothedRoundTripTime;
+    }
+
+    /**
+     * @return the round trip time variance of the session.
+     */
+    public long getRoundTripTimeVariance() {
+        return this.roundTripTimeVariance;
+    }
+
+    /**
+     * @return how long the session waits for an acknowledgement before a
+     * datagram is resent for the first time.
+     */
+    public long getRetransmissionTimeout() {
+        return this.retransmissionTimeout;
+    }
+
+    /**
+     * @return the amount of datagrams the session has resent.
+     */
+    public long getRetransmissions() {
+        return this.retransmissions;
+    }
+
+    /**
+     * @return the amount of payload bytes held by the split packets the
+     * session is still assembling.
+     */
+    public int getSplitSize() {
+        return this.splitSize;
+    }
+
+    /**
+     * @return the amount of incomplete split packets the session has
+     * discarded to stay within its limits.
+     */
+    public long getSplitPacketsEvicted() {
+        return this.splitPacketsEvicted;
+    }
+
+    /**
+     * @return the amount of incomplete split packets the session has
+     * discarded because they stopped receiving parts.
+     */
+    public long getSplitPacketsExpired() {
+        return this.splitPacketsExpired;
+    }
+
+    /**
+     * @return the amount of datagrams the session has left unacknowledged
+     * because the split packets of every session together were over budget.
+     */
+    public long getSplitDatagramsRefused() {
+        return this.splitDatagramsRefused;
+    }
+
+    /**
+     * @return the congestion controller of the session.
+     */
+    public CongestionController getCongestionController() {
+        return this.congestionController;
+    }
+
+    /**
+     * Sets the congestion controller of the session, this should be done
+     * before the session starts sending data.
+     *
+     * @param congestionController the new congestion controller.
+     */
+    public void setCongestionController(CongestionController congestionController) {
+        if (congestionController == null) {
+            throw new NullPointerException();
+        }
+        this.congestionController = congestionController;
+    }
+
+    /**
+     * @return how many unacknowledged reliable datagrams the session may
+     * currently have in flight.
+     */
+    public int getCongestionWindow() {
+        return congestionController.getCongestionWindow();
+    }
+
     /**
      * @return the amount of packets received this second.
      */
@@ -311,6 +471,7 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
     public final void sendMessage(Reliability reliability, int channel, Packet packet) throws InvalidChannelException {
         // Make sure channel doesn't exceed RakNet limit
         if (channel >= RakNet.MAX_CHANNELS) {
+            packet.release();
             throw new InvalidChannelException();
         }
 
@@ -319,6 +480,33 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         encapsulated.reliability = reliability;
         encapsulated.orderChannel = (byte) channel;
         encapsulated.payload = packet;
+
+        // Indexes can only be assigned by the event loop
+        if (this.released == true) {
+            packet.release();
+            return;
+        } else if (eventLoop.inEventLoop()) {
+            this.drainPendingQueue();
+            this.queueMessage(encapsulated);
+        } else {
+            pendingQueue.add(encapsulated);
+            if (this.released == true) {
+                eventLoop.execute(this::release); // Lost the race with release()
+            }
+        }
+        this.wake();
+    }
+
+    /**
+     * Assigns the indexes of an <code>EncapsulatedPacket</code> and puts it in
+     * the send queue, splitting it if needed. This must be called on the event
+     * loop of the session.
+     *
+     * @param encapsulated the <code>EncapsulatedPacket</code> to queue.
+     */
+    private final void queueMessage(EncapsulatedPacket encapsulated) {
+        Reliability reliability = encapsulated.reliability;
+        int channel = encapsulated.orderChannel;
         if (reliability.isReliable()) {
             encapsulated.messageIndex = this.messageIndex++;
         }
@@ -328,15 +516,36 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         }
 
         // Do we need to split the packet?
-        synchronized (sendQueue) {
-            if (SplitPacket.needsSplit(reliability, packet, this.maximumTransferUnit)) {
-                encapsulated.splitId = ++this.splitId % 65536;
-                for (EncapsulatedPacket split : SplitPacket.splitPacket(this, encapsulated)) {
-                    sendQueue.add(split);
-                }
-            } else {
-                sendQueue.add(encapsulated);
+        if (SplitPacket.needsSplit(reliability, encapsulated.payload, this.maximumTransferUnit)) {
+            encapsulated.splitId = ++this.splitId % 65536;
+            for (EncapsulatedPacket split : SplitPacket.splitPacket(this, encapsulated)) {
+                sendQueue.add(split);
             }
+            encapsulated.payload.release(); // The split packets hold their own references
+        } else {
+            sendQueue.add(encapsulated);
+        }
+    }
+
+    /**
+     * Moves the messages sent from other threads into the send queue, in the
+     * order they were sent.
+     */
+    private final void drainPendingQueue() {
+        EncapsulatedPacket encapsulated;
+        while ((encapsulated = pendingQueue.poll()) != null) {
+            this.queueMessage(encapsulated);
+        }
+    }
+
+    /**
+     * Wakes the session so it is updated as soon as possible instead of at its
+     * next deadline.
+     */
+    private final void wake() {
+        SessionScheduler<?> scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.wake(this);
         }
     }
 
@@ -346,51 +555,66 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         if (this.guid == guid) {
             this.sendMessage(reliability, channel, packet);
         } else {
+            packet.release();
             throw new IllegalArgumentException("Invalid GUID");
         }
     }
 
     /**
-     * Sends a raw message.
+     * Sends a raw message, messages sent on the event loop are flushed
+     * together once the current tick is over. The buffer of the packet is
+     * transferred to Netty, which releases it once it has been written.
      *
      * @param packet The packet to send.
      */
     public final void sendRawMessage(Packet packet) {
-        channel.writeAndFlush(new DatagramPacket(packet.buffer(), this.address));
+        egress.send(new DatagramPacket(packet.transferBuffer(), this.address));
     }
 
     /**
      * Sends a <code>CustomPacket</code> with the specified
-     * <code>EncapsulatedPacket</code>'s.
+     * <code>EncapsulatedPacket</code>'s and releases their payloads. Reliable
+     * messages are written first, so that their encoded frames can be kept in
+     * the recovery queue as a single slice of the datagram and resent without
+     * being encoded again.
      *
-     * @param encapsulated        the encapsulated packets to send.
-     * @param updateRecoveryQueue whether or not to store the encapsulated packets in the
-     *                            recovery queue for later, only set this to <code>true</code>
-     *                            if you are sending new data and not resending old data.
+     * @param encapsulated the encapsulated packets to send.
      * @return the sequence number of the <code>CustomPacket</code>.
      */
-    private final int sendCustomPacket(ArrayList<EncapsulatedPacket> encapsulated, boolean updateRecoveryQueue) {
+    private final int sendCustomPacket(ArrayList<EncapsulatedPacket> encapsulated) {
         // Create CustomPacket
         CustomPacket custom = new CustomPacket();
-        custom.sequenceNumber = this.sendSequenceNumber++;
-        custom.messages = encapsulated;
-        custom.encode();
-
-        // Send packet
-        this.sendRawMessage(custom);
-
-        // Do we need to store it for recovery?
-        synchronized (recoveryQueue) {
-            if (updateRecoveryQueue == true) {
-                // Make sure unreliable data is discarded
-                custom.removeUnreliables();
-                if (custom.messages.size() > 0) {
-                    recoveryQueue.put(custom.sequenceNumber,
-                            custom.messages.toArray(new EncapsulatedPacket[custom.messages.size()]));
-                }
+        custom.sequenceNumber = this.sendSequenceNumber;
+        this.sendSequenceNumber = (sendSequenceNumber + 1) & SequenceWindow.INDEX_MASK;
+        int reliableLength = 0;
+        for (EncapsulatedPacket message : encapsulated) {
+            if (message.reliability.isReliable()) {
+                custom.messages.add(message);
+                reliableLength += message.calculateSize();
+            }
+        }
+        for (EncapsulatedPacket message : encapsulated) {
+            if (!message.reliability.isReliable()) {
+                custom.messages.add(message);
+            }
+        }
+        try {
+            custom.encode();
+        } finally {
+            for (EncapsulatedPacket message : encapsulated) {
+                message.payload.release();
             }
         }
 
+        // Keep the reliable frames for recovery, then send the packet
+        if (reliableLength > 0) {
+            long currentTime = System.currentTimeMillis();
+            recoveryQueue.add(custom.sequenceNumber,
+                    custom.buffer().retainedSlice(CustomPacket.calculateDummy(), reliableLength), currentTime);
+            this.nextRecoveryTime = Math.min(this.nextRecoveryTime, currentTime + this.retransmissionTimeout);
+        }
+        this.sendRawMessage(custom);
+
         // Update packet data
         this.packetsSentThisSecond++;
         this.lastPacketSendTime = System.currentTimeMillis();
@@ -398,38 +622,113 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
     }
 
     /**
-     * Sends a <code>CustomPacket</code> with the specified
-     * <code>EncapsulatedPacket</code>'s
+     * Resends the encoded messages of a datagram that has not been
+     * acknowledged in a new datagram, which takes its place in the recovery
+     * queue. Only the header of the new datagram is written, the frames are
+     * shared with the original one.
      *
-     * @param encapsulated        The encapsulated packets to send
-     * @param updateRecoveryQueue Whether or not to store the encapsulated packets in the
-     *                            recovery queue for later, only set this to <code>true</code>
-     *                            if you are sending new data and not resending old data
-     * @return The sequence number of the <code>CustomPacket</code>
-     */
-    private final int sendCustomPacket(EncapsulatedPacket[] encapsulated, boolean updateRecoveryQueue) {
-        ArrayList<EncapsulatedPacket> encapsulatedArray = new ArrayList<EncapsulatedPacket>();
-        for (EncapsulatedPacket message : encapsulated) {
-            encapsulatedArray.add(message);
+     * @param sequenceNumber the sequence number of the datagram to resend.
+     */
+    private final void resendCustomPacket(int sequenceNumber) {
+        ByteBuf frames = recoveryQueue.get(sequenceNumber);
+        if (frames != null) {
+            int newSequenceNumber = this.sendSequenceNumber;
+            this.sendSequenceNumber = (sendSequenceNumber + 1) & SequenceWindow.INDEX_MASK;
+            RakNetPacket header = new RakNetPacket(ID_CUSTOM_4);
+            header.writeTriadLE(newSequenceNumber);
+            egress.send(new DatagramPacket(PacketAllocator.compositeBuffer(2).addComponents(true,
+                    header.transferBuffer(), frames.retainedDuplicate()), this.address));
+
+            long currentTime = System.currentTimeMillis();
+            recoveryQueue.resend(sequenceNumber, newSequenceNumber, currentTime);
+            this.nextRecoveryTime = Math.min(this.nextRecoveryTime,
+                    this.getRecoveryTime(newSequenceNumber));
+            this.retransmissions++;
+            this.packetsSentThisSecond++;
+            this.lastPacketSendTime = currentTime;
+        }
+    }
+
+    /**
+     * Returns when the datagram with the specified sequence number should be
+     * resent if it has not been acknowledged by then. The timeout doubles
+     * every time the same messages are resent.
+     *
+     * @param sequenceNumber the sequence number of the datagram.
+     * @return when the datagram should be resent.
+     */
+    private final long getRecoveryTime(int sequenceNumber) {
+        int retries = Math.min(recoveryQueue.getRetries(sequenceNumber), 16);
+        return recoveryQueue.getSendTime(sequenceNumber)
+                + Math.min(this.retransmissionTimeout << retries, RakNet.MAXIMUM_RETRANSMISSION_TIMEOUT);
+    }
+
+    /**
+     * @return the smoothed round trip time, or the retransmission timeout if
+     * no round trip time has been measured yet.
+     */
+    private final long getEstimatedRoundTripTime() {
+        return (this.smoothedRoundTripTime < 0 ? this.retransmissionTimeout : this.smoothedRoundTripTime);
+    }
+
+    /**
+     * Updates the round trip time estimates and the retransmission timeout
+     * with the specified round trip time sample, as described in RFC 6298.
+     *
+     * @param sample the measured round trip time.
+     */
+    private final void updateRoundTripTime(long sample) {
+        if (this.smoothedRoundTripTime < 0) {
+            this.smoothedRoundTripTime = sample;
+            this.roundTripTimeVariance = sample / 2;
+        } else {
+            this.roundTripTimeVariance = (3 * roundTripTimeVariance
+                    + Math.abs(smoothedRoundTripTime - sample)) / 4;
+            this.smoothedRoundTripTime = (7 * smoothedRoundTripTime + sample) / 8;
+        }
+        this.retransmissionTimeout = Math.max(RakNet.MINIMUM_RETRANSMISSION_TIMEOUT,
+                Math.min(smoothedRoundTripTime + Math.max(RakNet.SEND_INTERVAL, 4 * roundTripTimeVariance),
+                        RakNet.MAXIMUM_RETRANSMISSION_TIMEOUT));
+    }
+
+    /**
+     * Resends every datagram whose retransmission timer has expired and
+     * works out when the next one expires.
+     *
+     * @param currentTime the current time.
+     */
+    private final void recoverLostPackets(long currentTime) {
+        this.nextRecoveryTime = Long.MAX_VALUE;
+        int sequenceNumber = recoveryQueue.first();
+        while (sequenceNumber != -1) {
+            int next = recoveryQueue.next(sequenceNumber);
+            long recoveryTime = this.getRecoveryTime(sequenceNumber);
+            if (recoveryTime <= currentTime) {
+                congestionController.onLoss(currentTime, this.getEstimatedRoundTripTime(), true);
+                this.resendCustomPacket(sequenceNumber);
+            } else {
+                this.nextRecoveryTime = Math.min(this.nextRecoveryTime, recoveryTime);
+            }
+            sequenceNumber = next;
         }
-        return this.sendCustomPacket(encapsulatedArray, updateRecoveryQueue);
     }
 
     /**
-     * Sends an <code>Acknowledge</code> packet with the specified type and
-     * <code>Record</code>s.
+     * Sends the specified records in as many <code>Acknowledge</code> packets
+     * of the specified type as needed to stay within the maximum transfer
+     * unit.
      *
-     * @param type    the type of the <code>Acknowledge</code> packet.
-     * @param records the <code>Record</code>s to send.
+     * @param type    the type of the <code>Acknowledge</code> packets.
+     * @param records the records to send.
      */
-    private final void sendAcknowledge(AcknowledgeType type, Record... records) {
-        // Create Acknowledge packet
-        Acknowledge acknowledge = new Acknowledge(type);
-        for (Record record : records) {
-            acknowledge.records.add(record);
+    private final void sendAcknowledge(AcknowledgeType type, IntRangeSet records) {
+        int maximumRecords = Acknowledge.getMaximumRecords(this.maximumTransferUnit);
+        for (int i = 0; i < records.size(); i += maximumRecords) {
+            Acknowledge acknowledge = new Acknowledge(type);
+            acknowledge.records.addAll(records, i, Math.min(i + maximumRecords, records.size()));
+            acknowledge.encode();
+            this.sendRawMessage(acknowledge);
         }
-        acknowledge.encode();
-        this.sendRawMessage(acknowledge);
 
         // Update packet data
         this.lastPacketSendTime = System.currentTimeMillis();
@@ -444,54 +743,101 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         // Update packet data
         this.packetsReceivedThisSecond++;
 
-		/*
-         * There are three important things to note here:
-		 */
-
-		/*
-		 * 1. The reason we subtract one from the difference is because the last
-		 * sequence number we received should always be one less than the next
-		 * one
-		 */
-
-		/*
-		 * 2. The reason we add one to the last sequence number to the record
-		 * when the difference is bigger than one is because we have already
-		 * received that record, this is also the same reason we subtract one
-		 * from the CustomPacket's sequence number even when the difference is
-		 * not greater than one
-		 */
-
-		/*
-		 * 3. We always generate the NACK response first because the previous
-		 * sequence number data would be destroyed, making it impossible to
-		 * generate it
-		 */
-
-        // Generate NACK queue if needed
-        int difference = custom.sequenceNumber - this.receiveSequenceNumber - 1;
-        if (difference > 0) {
-            if (difference > 1) {
-                this.sendAcknowledge(AcknowledgeType.NOT_ACKNOWLEDGED,
-                        new Record(this.receiveSequenceNumber + 1, custom.sequenceNumber - 1));
-            } else {
-                this.sendAcknowledge(AcknowledgeType.NOT_ACKNOWLEDGED, new Record(custom.sequenceNumber - 1));
+        /*
+         * When the split packets of every session together are over budget
+         * the datagram is refused without being acknowledged, so the other
+         * side sends it again later instead of the session being closed for
+         * memory that other sessions are holding onto
+         */
+        if (this.exceedsTotalSplitSize(custom) == true) {
+            for (EncapsulatedPacket encapsulated : custom.messages) {
+                encapsulated.payload.release();
             }
+            this.splitDatagramsRefused++;
+            return;
         }
 
-        // Only handle if it is a newer packet
-        if (custom.sequenceNumber > this.receiveSequenceNumber - 1) {
-            this.receiveSequenceNumber = custom.sequenceNumber;
-            for (EncapsulatedPacket encapsulated : custom.messages) {
-                this.handleEncapsulated(encapsulated);
+        /*
+         * Datagrams are accepted in any order as long as they fall within the
+         * receive window, anything skipped over becomes a hole that is only
+         * NACKed if it is still open once the reorder threshold has passed
+         */
+        int sequenceNumber = custom.sequenceNumber;
+        int distance = SequenceWindow.distance(this.receiveSequenceNumber, sequenceNumber);
+        boolean newer = receiveWindow.add(sequenceNumber);
+        if (newer == true && distance > 0) {
+            long currentTime = System.currentTimeMillis();
+            for (int i = Math.max(1, distance - holeTimes.length); i < distance; i++) {
+                holeTimes[(receiveSequenceNumber + i) & (holeTimes.length - 1)] = currentTime;
             }
-
+            if (distance > 1 && nextNackTime == Long.MAX_VALUE) {
+                this.nextNackTime = currentTime + RakNet.REORDER_THRESHOLD;
+            }
+            this.receiveSequenceNumber = sequenceNumber;
+        }
+        int handled = 0;
+        try {
+            while (newer == true && handled < custom.messages.size()) {
+                this.handleEncapsulated(custom.messages.get(handled++));
+            }
+        } finally {
+            // Messages that were not handled still hold onto the datagram
+            for (int i = handled; i < custom.messages.size(); i++) {
+                custom.messages.get(i).payload.release();
+            }
+        }
+        if (newer == true) {
             // Update packet data
             this.lastPacketReceiveTime = System.currentTimeMillis();
         }
 
-        // Send ACK
-        this.sendAcknowledge(AcknowledgeType.ACKNOWLEDGED, new Record(custom.sequenceNumber));
+        /*
+         * Acknowledge the datagram once the current read is over, together
+         * with every other datagram received until then. Duplicates are
+         * acknowledged again in case the ACK was lost
+         */
+        acknowledgeQueue.add(custom.sequenceNumber);
+        this.wake();
+    }
+
+    /**
+     * Sends a single ACK for every datagram received since the last one was
+     * sent, consecutive sequence numbers are merged into ranged records.
+     */
+    private final void sendQueuedAcknowledge() {
+        this.sendAcknowledge(AcknowledgeType.ACKNOWLEDGED, acknowledgeQueue);
+        acknowledgeQueue.clear();
+    }
+
+    /**
+     * Sends a NACK for every hole in the receive window that has been open for
+     * longer than the reorder threshold. Holes are always NACKed in order, so
+     * this only looks at each sequence number once.
+     *
+     * @param currentTime the current time.
+     */
+    private final void sendLostAcknowledge(long currentTime) {
+        // Holes the window has slid past can no longer be recovered
+        if (SequenceWindow.distance(this.nackIndex, receiveWindow.getStart()) > 0) {
+            this.nackIndex = receiveWindow.getStart();
+        }
+
+        IntRangeSet lost = new IntRangeSet();
+        this.nextNackTime = Long.MAX_VALUE;
+        while (SequenceWindow.distance(this.nackIndex, this.receiveSequenceNumber) > 0) {
+            if (!receiveWindow.contains(this.nackIndex)) {
+                long nackTime = holeTimes[nackIndex & (holeTimes.length - 1)] + RakNet.REORDER_THRESHOLD;
+                if (nackTime > currentTime) {
+                    this.nextNackTime = nackTime;
+                    break; // Still waiting for reordered datagrams
+                }
+                lost.add(this.nackIndex);
+            }
+            this.nackIndex = (nackIndex + 1) & SequenceWindow.INDEX_MASK;
+        }
+        if (!lost.isEmpty()) {
+            this.sendAcknowledge(AcknowledgeType.NOT_ACKNOWLEDGED, lost);
+        }
     }
 
     /**
@@ -500,36 +846,41 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
      * @param acknowledge the <code>Acknowledge</code> packet to handle.
      */
     public final void handleAcknowledge(Acknowledge acknowledge) {
-        synchronized (recoveryQueue) {
-            if (acknowledge.getType().equals(AcknowledgeType.ACKNOWLEDGED)) {
-                // Remove acknowledged packets from the recovery queue
-                for (Record record : acknowledge.records) {
-                    this.onAcknowledge(record);
-                    recoveryQueue.remove(record.getIndex());
-                }
-            } else if (acknowledge.getType().equals(AcknowledgeType.NOT_ACKNOWLEDGED)) {
-                // Track old sequence numbers so they can be properly renamed
-                int[] oldSequenceNumbers = new int[acknowledge.records.size()];
-                int[] newSequenceNumbers = new int[oldSequenceNumbers.length];
-
-                for (int i = 0; i < acknowledge.records.size(); i++) {
-                    this.onNotAcknowledge(acknowledge.records.get(i));
-
-                    // Update records and resend lost packets
-                    Record record = acknowledge.records.get(i);
-                    if (recoveryQueue.containsKey(record.getIndex())) {
-                        oldSequenceNumbers[i] = record.getIndex();
-                        newSequenceNumbers[i] = this.sendCustomPacket(recoveryQueue.get(oldSequenceNumbers[i]), false);
-                    } else {
-                        oldSequenceNumbers[i] = -1;
-                        newSequenceNumbers[i] = -1;
+        if (acknowledge.getType().equals(AcknowledgeType.ACKNOWLEDGED)) {
+            // Remove acknowledged packets from the recovery queue
+            long currentTime = System.currentTimeMillis();
+            for (int i = 0; i < acknowledge.records.size(); i++) {
+                int start = acknowledge.records.getStart(i);
+                int end = acknowledge.records.getEnd(i);
+                this.onAcknowledge(start == end ? new Record(start) : new Record(start, end));
+                for (int index = start; index <= end; index++) {
+                    // Only sample datagrams that were never resent (Karn's rule)
+                    if (recoveryQueue.getRetries(index) == 0) {
+                        this.updateRoundTripTime(currentTime - recoveryQueue.getSendTime(index));
+                    }
+                    ByteBuf acknowledged = recoveryQueue.remove(index);
+                    if (acknowledged != null) {
+                        congestionController.onAcknowledge(currentTime, this.getEstimatedRoundTripTime());
+                        acknowledged.release();
                     }
                 }
+            }
 
-                // Rename lost packets
-                for (int i = 0; i < oldSequenceNumbers.length; i++) {
-                    if (oldSequenceNumbers[i] != -1) {
-                        recoveryQueue.renameKey(oldSequenceNumbers[i], newSequenceNumbers[i]);
+            // The congestion window may have opened up
+            if (!sendQueue.isEmpty()) {
+                this.wake();
+            }
+        } else if (acknowledge.getType().equals(AcknowledgeType.NOT_ACKNOWLEDGED)) {
+            // Resend lost packets and move them to their new sequence number
+            long currentTime = System.currentTimeMillis();
+            for (int i = 0; i < acknowledge.records.size(); i++) {
+                int start = acknowledge.records.getStart(i);
+                int end = acknowledge.records.getEnd(i);
+                this.onNotAcknowledge(start == end ? new Record(start) : new Record(start, end));
+                for (int index = start; index <= end; index++) {
+                    if (recoveryQueue.contains(index)) {
+                        congestionController.onLoss(currentTime, this.getEstimatedRoundTripTime(), false);
+                        this.resendCustomPacket(index);
                     }
                 }
             }
@@ -541,38 +892,60 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
 
     /**
      * Handles an <code>EncapsulatedPacket</code> and makes sure all the data is
-     * handled correctly.
+     * handled correctly. The payload of the <code>EncapsulatedPacket</code> is
+     * always released once it is no longer needed, even if an exception is
+     * thrown.
      *
      * @param encapsulated the <code>EncapsualtedPacket</code> to handle.
      */
     private final void handleEncapsulated(EncapsulatedPacket encapsulated) {
         Reliability reliability = encapsulated.reliability;
 
+        // Make sure we are not handling a duplicate, split packets are checked
+        // one by one since each of them has its own message index
+        if (reliability.isReliable() && !reliables.add(encapsulated.messageIndex)) {
+            encapsulated.payload.release();
+            return; // Do not handle, it is a duplicate
+        }
+
         // Put together split packet
         if (encapsulated.split == true) {
-            if (!splitQueue.containsKey(encapsulated.splitId)) {
+            SplitPacket splitPacket = splitQueue.get(encapsulated.splitId);
+            if (splitPacket == null) {
                 // Prevent queue from overflowing
-                if (splitQueue.size() + 1 > RakNet.MAX_SPLITS_PER_QUEUE) {
-                    // Remove unreliable packets from the queue
-                    Iterator<SplitPacket> splitPackets = splitQueue.values().iterator();
-                    while (splitPackets.hasNext()) {
-                        SplitPacket splitPacket = splitPackets.next();
-                        if (!splitPacket.getReliability().isReliable()) {
-                            splitPackets.remove();
-                        }
-                    }
+                if (splitQueue.size() >= RakNet.MAX_SPLITS_PER_QUEUE) {
+                    this.evictSplitPacket(null);
+                }
+                try {
+                    splitPacket = new SplitPacket(encapsulated.splitId, encapsulated.splitCount,
+                            encapsulated.reliability);
+                } catch (IllegalArgumentException e) {
+                    encapsulated.payload.release();
+                    throw e;
+                }
+                splitQueue.put(encapsulated.splitId, splitPacket);
+            }
 
-                    // The queue is filled with reliable packets
-                    if (splitQueue.size() + 1 > RakNet.MAX_SPLITS_PER_QUEUE) {
+            // Stay within the session budget
+            int size = encapsulated.payload.size();
+            while (this.splitSize + size > RakNet.MAX_SPLIT_SIZE_PER_SESSION) {
+                if (!this.evictSplitPacket(splitPacket)) {
+                    // Only the split packet itself is left to discard
+                    splitQueue.remove(encapsulated.splitId);
+                    this.splitSize -= splitPacket.getSize();
+                    splitPacket.release();
+                    this.splitPacketsEvicted++;
+                    encapsulated.payload.release();
+                    if (reliability.isReliable()) {
                         throw new SplitQueueOverloadException();
                     }
+                    return; // Unreliable, it is safe to lose
                 }
-                splitQueue.put(encapsulated.splitId,
-                        new SplitPacket(encapsulated.splitId, encapsulated.splitCount, encapsulated.reliability));
             }
 
-            SplitPacket splitPacket = splitQueue.get(encapsulated.splitId);
+            int previousSize = splitPacket.getSize();
             Packet finalPayload = splitPacket.update(encapsulated);
+            this.splitSize += splitPacket.getSize() - previousSize;
             if (finalPayload == null) {
                 return; // Do not handle, the split packet is not complete
             }
@@ -586,46 +959,126 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
             splitQueue.remove(encapsulated.splitId);
         }
 
-        // Make sure we are not handling a duplicate
-        if (reliability.isReliable()) {
-            if (reliables.contains(encapsulated.messageIndex)) {
-                return; // Do not handle, it is a duplicate
-            }
-            reliables.add(encapsulated.messageIndex);
-        }
-
         // Make sure we are handling everything in an ordered/sequenced fashion
         int orderIndex = encapsulated.orderIndex;
         int orderChannel = encapsulated.orderChannel;
-        if (orderChannel >= RakNet.MAX_CHANNELS) {
+        if (orderChannel < 0 || orderChannel >= RakNet.MAX_CHANNELS) {
+            encapsulated.payload.release();
             throw new InvalidChannelException();
         } else {
             // Channel is valid, it is safe to handle
             if (reliability.isOrdered()) {
-                // System.out.println("Received ordered packet on channel " +
-                // orderChannel + " with index " + orderIndex);
-                handleQueue.get(orderChannel).put(orderIndex, encapsulated);
-                while (handleQueue.get(orderChannel).containsKey(orderReceiveIndex[orderChannel])) {
-                    EncapsulatedPacket orderedEncapsulated = handleQueue.get(orderChannel)
-                            .get(orderReceiveIndex[orderChannel]++);
-                    handleQueue.get(orderChannel).remove(orderReceiveIndex[orderChannel] - 1);
-                    this.handleMessage0(encapsulated.orderChannel, new RakNetPacket(orderedEncapsulated.payload));
+                // Channels only get a queue once they are used
+                OrderQueue orderQueue = orderQueues[orderChannel];
+                if (orderQueue == null) {
+                    orderQueue = orderQueues[orderChannel] = new OrderQueue();
+                }
+                try {
+                    if (!orderQueue.add(encapsulated)) {
+                        encapsulated.payload.release();
+                        return; // Already handled or queued
+                    }
+                } catch (OrderQueueOverloadException e) {
+                    encapsulated.payload.release();
+                    throw e;
+                }
+
+                // Handle everything that is now in order
+                EncapsulatedPacket orderedEncapsulated;
+                while ((orderedEncapsulated = orderQueue.poll()) != null) {
+                    this.handlePayload(orderChannel, orderedEncapsulated.payload);
                 }
-				/*
-				 * System.out.println("Current order index for channel " +
-				 * orderChannel + ": " + (orderReceiveIndex[orderChannel] - 1) +
-				 * " (Leftover: " + handleQueue.get(orderChannel).size() +
-				 * ") (Last index on channel: " + orderIndex + ")");
-				 */
             } else if (reliability.isSequenced()) {
-                if (orderIndex > sequenceReceiveIndex[orderChannel]) {
-                    sequenceReceiveIndex[orderChannel] = orderIndex + 1;
-                    this.handleMessage0(encapsulated.orderChannel, new RakNetPacket(encapsulated.payload));
+                if (SequenceWindow.distance(sequenceReceiveIndex[orderChannel], orderIndex) >= 0) {
+                    sequenceReceiveIndex[orderChannel] = (orderIndex + 1) & SequenceWindow.INDEX_MASK;
+                    this.handlePayload(encapsulated.orderChannel, encapsulated.payload);
+                } else {
+                    encapsulated.payload.release(); // Outdated
                 }
             } else {
-                this.handleMessage0(encapsulated.orderChannel, new RakNetPacket(encapsulated.payload));
+                this.handlePayload(encapsulated.orderChannel, encapsulated.payload);
+            }
+        }
+    }
+
+    /**
+     * Returns whether or not the split parts of the specified
+     * <code>CustomPacket</code> that have not been received yet would go over
+     * the budget shared by the split packets of every session.
+     *
+     * @param custom the <code>CustomPacket</code> to check.
+     * @return true if the split parts do not fit.
+     */
+    private final boolean exceedsTotalSplitSize(CustomPacket custom) {
+        long size = 0;
+        for (EncapsulatedPacket encapsulated : custom.messages) {
+            if (encapsulated.split == true && (!encapsulated.reliability.isReliable()
+                    || !reliables.contains(encapsulated.messageIndex))) {
+                size += encapsulated.payload.size();
+            }
+        }
+        return size > 0 && SplitPacket.getTotalSize() + size > RakNet.MAX_SPLIT_SIZE;
+    }
+
+    /**
+     * Discards the split packet that has gone the longest without receiving
+     * a part, to make room for another one.
+     *
+     * @param keep the split packet that must not be discarded, may be
+     *             <code>null</code>.
+     * @return true if a split packet was discarded.
+     */
+    private final boolean evictSplitPacket(SplitPacket keep) {
+        SplitPacket oldest = null;
+        for (SplitPacket splitPacket : splitQueue.values()) {
+            if (splitPacket != keep
+                    && (oldest == null || splitPacket.getLastUpdateTime() < oldest.getLastUpdateTime())) {
+                oldest = splitPacket;
             }
         }
+        if (oldest == null) {
+            return false;
+        }
+        splitQueue.remove(oldest.getSplitId());
+        this.splitSize -= oldest.getSize();
+        oldest.release();
+        this.splitPacketsEvicted++;
+        return true;
+    }
+
+    /**
+     * Discards every split packet that has not received a part for
+     * <code>SPLIT_TIMEOUT</code> milliseconds.
+     *
+     * @param currentTime the current time.
+     */
+    private final void expireSplitPackets(long currentTime) {
+        Iterator<SplitPacket> splitPackets = splitQueue.values().iterator();
+        while (splitPackets.hasNext()) {
+            SplitPacket splitPacket = splitPackets.next();
+            if (currentTime - splitPacket.getLastUpdateTime() >= RakNet.SPLIT_TIMEOUT) {
+                this.splitSize -= splitPacket.getSize();
+                splitPacket.release();
+                splitPackets.remove();
+                this.splitPacketsExpired++;
+            }
+        }
+    }
+
+    /**
+     * Handles the payload of an <code>EncapsulatedPacket</code> and releases
+     * it afterwards. The payload is only borrowed by the handlers, anything
+     * that wants to keep it around must copy or retain it.
+     *
+     * @param channel the channel the payload was sent on.
+     * @param payload the payload.
+     */
+    private final void handlePayload(int channel, Packet payload) {
+        try {
+            this.handleMessage0(channel, new RakNetPacket(payload));
+        } finally {
+            payload.release();
+        }
     }
 
     /**
@@ -683,50 +1136,93 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
     }
 
     /**
-     * Updates the session.
+     * @return the time at which the session next has to be updated, this is
+     * the earliest of its send, recovery, ping, keep alive and timeout
+     * deadlines.
+     */
+    public final long getNextUpdateTime() {
+        long nextUpdateTime = this.lastPacketReceiveTime + RakNet.SESSION_TIMEOUT;
+
+        // Received datagrams are acknowledged right away
+        if (!acknowledgeQueue.isEmpty()) {
+            return System.currentTimeMillis();
+        }
+
+        // Queued packets go out right away unless the congestion window is
+        // full, in which case the next acknowledgement wakes the session
+        if (!pendingQueue.isEmpty() || (!sendQueue.isEmpty()
+                && recoveryQueue.size() < congestionController.getCongestionWindow())) {
+            nextUpdateTime = System.currentTimeMillis();
+        }
+
+        // Holes in the receive window
+        nextUpdateTime = Math.min(nextUpdateTime, this.nextNackTime);
+
+        // Lost packets
+        if (!recoveryQueue.isEmpty()) {
+            nextUpdateTime = Math.min(nextUpdateTime, this.nextRecoveryTime);
+        }
+
+        // Latency detection and keep alive
+        if (state.getOrder() >= this.keepAliveState && this.keepAliveState >= 0) {
+            nextUpdateTime = Math.min(nextUpdateTime, this.lastPingSendTime + RakNet.PING_SEND_INTERVAL);
+            nextUpdateTime = Math.min(nextUpdateTime, Math.max(this.lastPacketReceiveTime, this.lastKeepAliveSendTime)
+                    + RakNet.DETECTION_SEND_INTERVAL);
+        }
+
+        // Incomplete split packets
+        for (SplitPacket splitPacket : splitQueue.values()) {
+            nextUpdateTime = Math.min(nextUpdateTime, splitPacket.getLastUpdateTime() + RakNet.SPLIT_TIMEOUT);
+        }
+
+        // Packet counters
+        if (this.packetsSentThisSecond > 0 || this.packetsReceivedThisSecond > 0) {
+            nextUpdateTime = Math.min(nextUpdateTime, this.lastPacketCounterResetTime + 1000L);
+        }
+        return nextUpdateTime;
+    }
+
+    /**
+     * Updates the session, this must be called on the event loop of the
+     * session.
      */
     public final void update() {
         long currentTime = System.currentTimeMillis();
+        this.drainPendingQueue();
 
-        // Send packets in the send queue
-        synchronized (sendQueue) {
-            if (!sendQueue.isEmpty() && this.packetsSentThisSecond < RakNet.MAX_PACKETS_PER_SECOND) {
-                ArrayList<EncapsulatedPacket> send = new ArrayList<EncapsulatedPacket>();
-                int sendLength = CustomPacket.calculateDummy();
-
-                // Add packets
-                Iterator<EncapsulatedPacket> sendQueueI = sendQueue.iterator();
-                while (sendQueueI.hasNext()) {
-                    // Make sure the packet will not cause an overflow
-                    EncapsulatedPacket encapsulated = sendQueueI.next();
-                    if (encapsulated == null) {
-                        sendQueueI.remove();
-                        continue;
-                    }
-                    sendLength += encapsulated.calculateSize();
-                    if (sendLength > this.maximumTransferUnit) {
-                        break;
-                    }
-
-                    // Add the packet and remove it from the queue
-                    send.add(encapsulated);
-                    sendQueueI.remove();
-                }
+        // Acknowledge everything received since the last update, this goes out
+        // in the same flush as the data sent below
+        if (!acknowledgeQueue.isEmpty()) {
+            this.sendQueuedAcknowledge();
+        }
 
-                // Send packet
-                if (send.size() > 0) {
-                    this.sendCustomPacket(send, true);
+        // Pack the send queue into datagrams until it is empty or the
+        // congestion window is full
+        while (!sendQueue.isEmpty() && recoveryQueue.size() < congestionController.getCongestionWindow()) {
+            ArrayList<EncapsulatedPacket> send = new ArrayList<EncapsulatedPacket>();
+            int sendLength = CustomPacket.calculateDummy();
+
+            // Add packets, a packet that can never fit is sent on its own
+            // instead of blocking the queue
+            EncapsulatedPacket encapsulated;
+            while ((encapsulated = sendQueue.peek()) != null) {
+                sendLength += encapsulated.calculateSize();
+                if (sendLength > this.maximumTransferUnit && !send.isEmpty()) {
+                    break;
                 }
+                send.add(sendQueue.poll());
             }
+            this.sendCustomPacket(send);
+        }
+
+        // Report datagrams that are still missing
+        if (currentTime >= this.nextNackTime) {
+            this.sendLostAcknowledge(currentTime);
         }
 
         // Resend lost packets
-        synchronized (recoveryQueue) {
-            Iterator<EncapsulatedPacket[]> recovering = recoveryQueue.values().iterator();
-            if (currentTime - this.lastRecoverySendTime >= RakNet.RECOVERY_SEND_INTERVAL && recovering.hasNext()) {
-                this.sendCustomPacket(recovering.next(), false);
-                this.lastRecoverySendTime = currentTime;
-            }
+        if (currentTime >= this.nextRecoveryTime) {
+            this.recoverLostPackets(currentTime);
         }
 
         // Send ping to detect latency if it is enabled
@@ -748,6 +1244,11 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
             this.lastKeepAliveSendTime = currentTime;
         }
 
+        // Discard split packets that stopped receiving parts
+        if (!splitQueue.isEmpty()) {
+            this.expireSplitPackets(currentTime);
+        }
+
         // Client timed out
         if (currentTime - this.lastPacketReceiveTime >= RakNet.SESSION_TIMEOUT) {
             throw new TimeoutException();
@@ -761,11 +1262,49 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
         }
     }
 
+    /**
+     * Releases the data the session is still holding onto, such as incomplete
+     * split packets, packets waiting to be handled in order and packets that
+     * were never sent or acknowledged. This is called once the session has
+     * been removed.
+     */
+    public final void release() {
+        this.released = true;
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(this::release);
+            return;
+        }
+        for (SplitPacket splitPacket : splitQueue.values()) {
+            splitPacket.release();
+        }
+        splitQueue.clear();
+        this.splitSize = 0;
+        for (OrderQueue orderQueue : orderQueues) {
+            if (orderQueue != null) {
+                orderQueue.release();
+            }
+        }
+        EncapsulatedPacket pending;
+        while ((pending = pendingQueue.poll()) != null) {
+            pending.payload.release();
+        }
+        while ((pending = sendQueue.poll()) != null) {
+            pending.payload.release();
+        }
+        for (int sequenceNumber = recoveryQueue.first(); sequenceNumber != -1; sequenceNumber = recoveryQueue
+                .next(sequenceNumber)) {
+            recoveryQueue.get(sequenceNumber).release();
+        }
+        recoveryQueue.clear();
+        acknowledgeQueue.clear();
+    }
+
     /**
      * This function is called when a acknowledge receipt is received for the
      * packet.
      *
-     * @param record the received record.
+     * @param record the received record, consecutive indexes are reported as
+     *               a single ranged record.
      */
     public abstract void onAcknowledge(Record record);
 
@@ -773,12 +1312,15 @@ public abstract class RakNetSession implements UnumRakNetPeer, GeminusRakNetPeer
      * This function is called when a not acknowledged receipt is received for
      * the packet.
      *
-     * @param record the lost record.
+     * @param record the lost record, consecutive indexes are reported as a
+     *               single ranged record.
      */
     public abstract void onNotAcknowledge(Record record);
 
     /**
-     * This function is called when a packet is received by the session.
+     * This function is called when a packet is received by the session. The
+     * packet shares the data of the received datagram and is only valid until
+     * this function returns, it must be copied or retained to be kept.
      *
      * @param packet  the packet to handle.
      * @param channel the packet the channel was sent on.
@@ -0,0 +1,269 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.session;
+
+import io.netty.buffer.ByteBuf;
+import me.kernelfreeze.bedrockproxy.raknet.util.SequenceWindow;
+
+/**
+ * Used to store the encoded reliable messages of sent datagrams until they
+ * are acknowledged, so they can be resent without being encoded again.
+ * Entries are kept in a ring indexed by the sequence number of
+ * the datagram they were last sent in, so lookups need no hashing or boxing
+ * and moving an entry to the sequence number it was resent with is a single
+ * slot copy. The ring doubles in size whenever a new sequence number would
+ * land on an entry that is still waiting for an acknowledgement.
+ *
+ * @author KernelFreeze
+ */
+public class RecoveryQueue {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int[] sequences;
+    private ByteBuf[] messages;
+    private long[] sendTimes;
+    private int[] retries;
+    private int mask;
+    private int size;
+    private int head;
+    private int tail;
+
+    /**
+     * Constructs a <code>RecoveryQueue</code> with the default initial
+     * capacity.
+     */
+    public RecoveryQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a <code>RecoveryQueue</code> with the specified initial
+     * capacity.
+     *
+     * @param capacity the initial capacity, this must be a power of two.
+     */
+    public RecoveryQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.allocate(capacity);
+    }
+
+    /**
+     * @return the amount of datagrams waiting for an acknowledgement.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if there are no datagrams waiting for an acknowledgement.
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @param sequenceNumber the sequence number of the datagram.
+     * @return true if the datagram is waiting for an acknowledgement.
+     */
+    public boolean contains(int sequenceNumber) {
+        int slot = sequenceNumber & mask;
+        return messages[slot] != null && sequences[slot] == sequenceNumber;
+    }
+
+    /**
+     * @param sequenceNumber the sequence number of the datagram.
+     * @return the encoded messages of the datagram, or null if it is not
+     * waiting for an acknowledgement.
+     */
+    public ByteBuf get(int sequenceNumber) {
+        return (this.contains(sequenceNumber) ? messages[sequenceNumber & mask] : null);
+    }
+
+    /**
+     * @param sequenceNumber the sequence number of the datagram.
+     * @return when the datagram was last sent, or -1 if it is not waiting for
+     * an acknowledgement.
+     */
+    public long getSendTime(int sequenceNumber) {
+        return (this.contains(sequenceNumber) ? sendTimes[sequenceNumber & mask] : -1L);
+    }
+
+    /**
+     * @param sequenceNumber the sequence number of the datagram.
+     * @return how many times the messages of the datagram have been resent,
+     * or -1 if it is not waiting for an acknowledgement.
+     */
+    public int getRetries(int sequenceNumber) {
+        return (this.contains(sequenceNumber) ? retries[sequenceNumber & mask] : -1);
+    }
+
+    /**
+     * Stores the messages of a newly sent datagram, the queue takes ownership
+     * of the buffer.
+     *
+     * @param sequenceNumber the sequence number of the datagram.
+     * @param encapsulated   the encoded reliable messages of the datagram.
+     * @param sendTime       when the datagram was sent.
+     */
+    public void add(int sequenceNumber, ByteBuf encapsulated, long sendTime) {
+        this.put(sequenceNumber, encapsulated, sendTime, 0);
+    }
+
+    /**
+     * Moves the messages of a datagram to the sequence number they were resent
+     * with.
+     *
+     * @param sequenceNumber    the sequence number the messages were sent with.
+     * @param newSequenceNumber the sequence number the messages were resent
+     *                          with.
+     * @param sendTime          when the messages were resent.
+     * @return true if the datagram was waiting for an acknowledgement.
+     */
+    public boolean resend(int sequenceNumber, int newSequenceNumber, long sendTime) {
+        if (!this.contains(sequenceNumber)) {
+            return false;
+        }
+        int slot = sequenceNumber & mask;
+        ByteBuf encapsulated = messages[slot];
+        int retryCount = retries[slot] + 1;
+        messages[slot] = null;
+        this.size--;
+        this.put(newSequenceNumber, encapsulated, sendTime, retryCount);
+        return true;
+    }
+
+    /**
+     * Removes a datagram once it has been acknowledged, ownership of its
+     * buffer goes to the caller.
+     *
+     * @param sequenceNumber the sequence number of the datagram.
+     * @return the encoded messages of the datagram, or null if it was not
+     * waiting for an acknowledgement.
+     */
+    public ByteBuf remove(int sequenceNumber) {
+        if (!this.contains(sequenceNumber)) {
+            return null;
+        }
+        int slot = sequenceNumber & mask;
+        ByteBuf encapsulated = messages[slot];
+        messages[slot] = null;
+        this.size--;
+        return encapsulated;
+    }
+
+    /**
+     * @return the sequence number of the oldest datagram waiting for an
+     * acknowledgement, or -1 if there is none.
+     */
+    public int first() {
+        if (this.size == 0) {
+            this.head = this.tail;
+            return -1;
+        }
+        while (!this.contains(head)) {
+            this.head = (head + 1) & SequenceWindow.INDEX_MASK;
+        }
+        return this.head;
+    }
+
+    /**
+     * @param sequenceNumber the sequence number to start after.
+     * @return the sequence number of the next datagram waiting for an
+     * acknowledgement after the specified one, or -1 if there is none.
+     */
+    public int next(int sequenceNumber) {
+        int next = (sequenceNumber + 1) & SequenceWindow.INDEX_MASK;
+        while (SequenceWindow.distance(next, tail) > 0) {
+            if (this.contains(next)) {
+                return next;
+            }
+            next = (next + 1) & SequenceWindow.INDEX_MASK;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes every datagram from the queue, the buffers are not released.
+     */
+    public void clear() {
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = null;
+        }
+        this.size = 0;
+        this.head = this.tail;
+    }
+
+    private void put(int sequenceNumber, ByteBuf encapsulated, long sendTime, int retryCount) {
+        while (messages[sequenceNumber & mask] != null) {
+            this.grow(); // The slot still belongs to an older datagram
+        }
+        int slot = sequenceNumber & mask;
+        sequences[slot] = sequenceNumber;
+        messages[slot] = encapsulated;
+        sendTimes[slot] = sendTime;
+        retries[slot] = retryCount;
+        if (this.size++ == 0) {
+            this.head = sequenceNumber;
+        }
+        if (SequenceWindow.distance(tail, sequenceNumber) >= 0) {
+            this.tail = (sequenceNumber + 1) & SequenceWindow.INDEX_MASK;
+        }
+    }
+
+    private void grow() {
+        int[] oldSequences = this.sequences;
+        ByteBuf[] oldMessages = this.messages;
+        long[] oldSendTimes = this.sendTimes;
+        int[] oldRetries = this.retries;
+        this.allocate(oldMessages.length << 1);
+        for (int i = 0; i < oldMessages.length; i++) {
+            if (oldMessages[i] != null) {
+                int slot = oldSequences[i] & mask;
+                sequences[slot] = oldSequences[i];
+                messages[slot] = oldMessages[i];
+                sendTimes[slot] = oldSendTimes[i];
+                retries[slot] = oldRetries[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.sequences = new int[capacity];
+        this.messages = new ByteBuf[capacity];
+        this.sendTimes = new long[capacity];
+        this.retries = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+}
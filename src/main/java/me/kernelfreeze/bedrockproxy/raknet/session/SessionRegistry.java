@@ -0,0 +1,170 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.session;
+
+import me.kernelfreeze.bedrockproxy.raknet.util.map.ConcurrentLongMap;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Used to keep track of the sessions connected to a server. Sessions are
+ * indexed both by their globally unique ID and by their address, IPv4
+ * addresses are packed together with their port into a single long so
+ * looking up the session of a datagram does not need to hash an
+ * <code>InetSocketAddress</code>. Lookups never lock, registering and
+ * removing sessions is serialized on the registry.
+ *
+ * @author KernelFreeze
+ */
+public class SessionRegistry<T extends RakNetSession> {
+
+    private final ConcurrentLongMap<T> guids;
+    private final ConcurrentLongMap<T> addresses;
+    private final ConcurrentHashMap<InetSocketAddress, T> fallbackAddresses;
+
+    /**
+     * Constructs an empty <code>SessionRegistry</code>.
+     */
+    public SessionRegistry() {
+        this.guids = new ConcurrentLongMap<T>();
+        this.addresses = new ConcurrentLongMap<T>();
+        this.fallbackAddresses = new ConcurrentHashMap<InetSocketAddress, T>();
+    }
+
+    /**
+     * @return the amount of sessions in the registry.
+     */
+    public int size() {
+        return guids.size();
+    }
+
+    /**
+     * @return a snapshot of the sessions in the registry.
+     */
+    public List<T> values() {
+        return guids.values();
+    }
+
+    /**
+     * @param address the address of the session.
+     * @return the session with the specified address, <code>null</code> if
+     * there is none.
+     */
+    public T get(InetSocketAddress address) {
+        if (address.getAddress() instanceof Inet4Address) {
+            return addresses.get(packAddress(address));
+        }
+        return fallbackAddresses.get(address);
+    }
+
+    /**
+     * @param guid the globally unique ID of the session.
+     * @return the session with the specified globally unique ID,
+     * <code>null</code> if there is none.
+     */
+    public T get(long guid) {
+        return guids.get(guid);
+    }
+
+    /**
+     * @param address the address to check.
+     * @return true if there is a session with the specified address.
+     */
+    public boolean contains(InetSocketAddress address) {
+        return this.get(address) != null;
+    }
+
+    /**
+     * @param guid the globally unique ID to check.
+     * @return true if there is a session with the specified globally unique
+     * ID.
+     */
+    public boolean contains(long guid) {
+        return guids.containsKey(guid);
+    }
+
+    /**
+     * Registers a session, this fails if there already is a session with the
+     * same address or globally unique ID.
+     *
+     * @param session the session to register.
+     * @return true if the session was registered.
+     */
+    public synchronized boolean add(T session) {
+        if (this.contains(session.getAddress()) || guids.putIfAbsent(session.getGloballyUniqueId(), session) != null) {
+            return false;
+        }
+        InetSocketAddress address = session.getAddress();
+        if (address.getAddress() instanceof Inet4Address) {
+            addresses.put(packAddress(address), session);
+        } else {
+            fallbackAddresses.put(address, session);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a session if it is still registered.
+     *
+     * @param session the session to remove.
+     * @return true if the session was removed.
+     */
+    public synchronized boolean remove(T session) {
+        if (!guids.remove(session.getGloballyUniqueId(), session)) {
+            return false;
+        }
+        InetSocketAddress address = session.getAddress();
+        if (address.getAddress() instanceof Inet4Address) {
+            addresses.remove(packAddress(address), session);
+        } else {
+            fallbackAddresses.remove(address, session);
+        }
+        return true;
+    }
+
+    /**
+     * Packs an IPv4 address and its port into a single long.
+     *
+     * @param address the address to pack, it must be an IPv4 address.
+     * @return the packed address.
+     */
+    private static long packAddress(InetSocketAddress address) {
+        InetAddress inetAddress = address.getAddress();
+
+        // The hash code of an IPv4 address is the address itself
+        return ((inetAddress.hashCode() & 0xFFFFFFFFL) << 16) | address.getPort();
+    }
+
+}
@@ -0,0 +1,292 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.session;
+
+import io.netty.channel.EventLoop;
+import io.netty.util.internal.PlatformDependent;
+import me.kernelfreeze.bedrockproxy.raknet.RakNet;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Used to update sessions on a hashed timing wheel instead of spinning over
+ * all of them. The wheel advances once every
+ * {@link RakNet#SEND_INTERVAL SEND_INTERVAL} and every session sits in the
+ * slot of its next deadline, so an idle session is not touched until it has
+ * to ping, recover or time out. Sessions with queued data are woken right
+ * away through {@link #wake(RakNetSession)}.
+ * <p>
+ * A scheduler is driven by a single <code>EventLoop</code>, the same one the
+ * channel of its sessions reads on. This way receiving, updating and sending
+ * for a session all happen on one thread and the session needs no locks.
+ *
+ * @author KernelFreeze
+ */
+public class SessionScheduler<T extends RakNetSession> {
+
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final EventLoop eventLoop;
+    private final Consumer<T> updater;
+    private final RakNetSession[] wheel;
+    private final Queue<RakNetSession> woken;
+    private final ArrayDeque<RakNetSession> due;
+    private final ArrayDeque<RakNetSession> expired;
+    private final AtomicBoolean drainScheduled;
+    private final Runnable drainTask;
+    private long startTime;
+    private long tick;
+    private ScheduledFuture<?> future;
+
+    /**
+     * Constructs a <code>SessionScheduler</code> that runs on the specified
+     * <code>EventLoop</code> and updates sessions with the specified updater.
+     *
+     * @param eventLoop the event loop the wheel is driven by, every session
+     *                  update happens on it.
+     * @param updater   called whenever a session is due for an update.
+     */
+    public SessionScheduler(EventLoop eventLoop, Consumer<T> updater) {
+        this.eventLoop = eventLoop;
+        this.updater = updater;
+        this.wheel = new RakNetSession[WHEEL_SIZE];
+        this.woken = PlatformDependent.newMpscQueue();
+        this.due = new ArrayDeque<RakNetSession>();
+        this.expired = new ArrayDeque<RakNetSession>();
+        this.drainScheduled = new AtomicBoolean();
+        this.drainTask = this::drainWoken;
+    }
+
+    /**
+     * Starts advancing the wheel.
+     */
+    public void start() {
+        this.startTime = System.currentTimeMillis();
+        this.future = eventLoop.scheduleAtFixedRate(this::advance, RakNet.SEND_INTERVAL, RakNet.SEND_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops advancing the wheel, sessions still registered will no longer be
+     * updated.
+     */
+    public void stop() {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * @return the event loop the scheduler runs on.
+     */
+    public EventLoop getEventLoop() {
+        return this.eventLoop;
+    }
+
+    /**
+     * Registers a session so it is updated by the scheduler from now on.
+     *
+     * @param session the session to register.
+     * @throws IllegalArgumentException if the session is pinned to another
+     *                                  event loop.
+     */
+    public void register(T session) {
+        if (session.getEventLoop() != eventLoop) {
+            throw new IllegalArgumentException("Session is pinned to another event loop");
+        } else if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> this.register(session));
+            return;
+        }
+        session.scheduler = this;
+        this.schedule(session, System.currentTimeMillis());
+    }
+
+    /**
+     * Unregisters a session, it will no longer be updated by the scheduler.
+     *
+     * @param session the session to unregister.
+     */
+    public void unregister(T session) {
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> this.unregister(session));
+            return;
+        }
+        this.unlink(session);
+        session.scheduler = null;
+    }
+
+    /**
+     * Wakes the specified session so it is updated as soon as possible rather
+     * than at its next deadline.
+     *
+     * @param session the session to wake.
+     */
+    public void wake(RakNetSession session) {
+        if (session.woken.compareAndSet(false, true)) {
+            woken.add(session);
+            if (drainScheduled.compareAndSet(false, true)) {
+                eventLoop.execute(drainTask);
+            }
+        }
+    }
+
+    /**
+     * Updates every session that has been woken up.
+     */
+    private void drainWoken() {
+        drainScheduled.set(false);
+        RakNetSession session;
+        while ((session = woken.poll()) != null) {
+            session.woken.set(false);
+            if (session.scheduler == this) {
+                this.unlink(session);
+                this.update(session);
+            }
+        }
+        this.wakeDue();
+    }
+
+    /**
+     * Advances the wheel to the current time, updating every session whose
+     * deadline has been reached on the way.
+     */
+    private void advance() {
+        long target = (System.currentTimeMillis() - startTime) / RakNet.SEND_INTERVAL;
+        while (tick < target) {
+            int slot = (int) (++tick & WHEEL_MASK);
+
+            /*
+             * Take every expired session off the slot before updating any of
+             * them, since an update can unregister other sessions from the
+             * same slot and leave the link to the next one stale
+             */
+            RakNetSession session = wheel[slot];
+            while (session != null) {
+                RakNetSession next = session.wheelNext;
+                if (session.wheelRounds > 0) {
+                    session.wheelRounds--;
+                } else {
+                    this.unlink(session);
+                    expired.add(session);
+                }
+                session = next;
+            }
+            while ((session = expired.poll()) != null) {
+                if (session.scheduler == this) {
+                    this.update(session);
+                }
+            }
+        }
+        this.wakeDue();
+    }
+
+    /**
+     * Wakes the sessions that were already due again after being updated,
+     * this is done after a pass so a busy session can not starve the others.
+     */
+    private void wakeDue() {
+        RakNetSession session;
+        while ((session = due.poll()) != null) {
+            this.wake(session);
+        }
+    }
+
+    /**
+     * Updates the session and puts it back on the wheel at its next deadline
+     * if it is still registered. If the session is already due again, for
+     * example because it still has queued packets, it is woken again once the
+     * current pass is over.
+     *
+     * @param session the session to update.
+     */
+    @SuppressWarnings("unchecked")
+    private void update(RakNetSession session) {
+        updater.accept((T) session);
+        if (session.scheduler == this) {
+            long nextUpdateTime = session.getNextUpdateTime();
+            if (nextUpdateTime <= System.currentTimeMillis()) {
+                due.add(session);
+            } else {
+                this.schedule(session, nextUpdateTime);
+            }
+        }
+    }
+
+    /**
+     * Puts the session on the wheel in the slot of the specified deadline.
+     *
+     * @param session  the session to schedule.
+     * @param deadline the time the session must be updated at.
+     */
+    private void schedule(RakNetSession session, long deadline) {
+        this.unlink(session);
+        long deadlineTick = Math.max((deadline - startTime + RakNet.SEND_INTERVAL - 1) / RakNet.SEND_INTERVAL,
+                tick + 1);
+        int slot = (int) (deadlineTick & WHEEL_MASK);
+        session.wheelRounds = (deadlineTick - tick - 1) / WHEEL_SIZE;
+        session.wheelSlot = slot;
+        session.wheelPrev = null;
+        session.wheelNext = wheel[slot];
+        if (wheel[slot] != null) {
+            wheel[slot].wheelPrev = session;
+        }
+        wheel[slot] = session;
+    }
+
+    /**
+     * Removes the session from the wheel if it is on it.
+     *
+     * @param session the session to remove.
+     */
+    private void unlink(RakNetSession session) {
+        if (session.wheelSlot < 0) {
+            return; // Not on the wheel
+        }
+        if (session.wheelPrev != null) {
+            session.wheelPrev.wheelNext = session.wheelNext;
+        } else {
+            wheel[session.wheelSlot] = session.wheelNext;
+        }
+        if (session.wheelNext != null) {
+            session.wheelNext.wheelPrev = session.wheelPrev;
+        }
+        session.wheelPrev = null;
+        session.wheelNext = null;
+        session.wheelSlot = -1;
+    }
+
+}
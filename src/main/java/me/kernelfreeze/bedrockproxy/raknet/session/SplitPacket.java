@@ -30,27 +30,40 @@
  */
 package me.kernelfreeze.bedrockproxy.raknet.session;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import me.kernelfreeze.bedrockproxy.raknet.Packet;
 import me.kernelfreeze.bedrockproxy.raknet.RakNet;
 import me.kernelfreeze.bedrockproxy.raknet.protocol.Reliability;
 import me.kernelfreeze.bedrockproxy.raknet.protocol.message.CustomPacket;
 import me.kernelfreeze.bedrockproxy.raknet.protocol.message.EncapsulatedPacket;
-import me.kernelfreeze.bedrockproxy.raknet.util.ArrayUtils;
-import me.kernelfreeze.bedrockproxy.raknet.util.map.IntMap;
+import me.kernelfreeze.bedrockproxy.raknet.util.PacketAllocator;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Used to easily assemble split packets received from a
- * <code>RakNetSession</code>.
+ * <code>RakNetSession</code>. The payloads of the received parts are kept as
+ * they are and joined into a single composite buffer once every part has
+ * arrived, so the data is never copied while it is being reassembled. The
+ * bytes held by every split packet are also counted towards a global total
+ * shared by all sessions.
  *
  * @author MarfGamer
  */
 public class SplitPacket {
 
+    private static final AtomicLong totalSize = new AtomicLong();
+
     private final int splitId;
     private final int splitCount;
     private final Reliability reliability;
 
-    private final IntMap<Packet> payloads;
+    private final Packet[] payloads;
+    private final long[] received;
+    private int receivedCount;
+    private int size;
+    private long lastUpdateTime;
 
     /**
      * Constructs a <code>SplitPacket</code> with the specified split ID, split
@@ -64,11 +77,12 @@ public class SplitPacket {
         this.splitId = splitId;
         this.splitCount = splitCount;
         this.reliability = reliability;
-        this.payloads = new IntMap<Packet>();
-
-        if (this.splitCount > RakNet.MAX_SPLIT_COUNT) {
-            throw new IllegalArgumentException("Split count can be no greater than " + RakNet.MAX_SPLIT_COUNT);
+        if (this.splitCount <= 0 || this.splitCount > RakNet.MAX_SPLIT_COUNT) {
+            throw new IllegalArgumentException("Split count must be between 1 and " + RakNet.MAX_SPLIT_COUNT);
         }
+        this.payloads = new Packet[splitCount];
+        this.received = new long[(splitCount + 63) >> 6];
+        this.lastUpdateTime = System.currentTimeMillis();
     }
 
     /**
@@ -84,7 +98,9 @@ public class SplitPacket {
 
     /**
      * Splits the specified <code>EncapsulatedPacket</code> using the specified
-     * maximumTransferUnit
+     * maximumTransferUnit. The payloads of the split packets are read-only
+     * retained slices of the original payload, which still has to be
+     * released by the caller.
      *
      * @param session      the session.
      * @param encapsulated the <code>EncapsulatedPacket</code> to split.
@@ -92,16 +108,21 @@ public class SplitPacket {
      */
     public static final EncapsulatedPacket[] splitPacket(RakNetSession session, EncapsulatedPacket encapsulated) {
         // Get split packet data
-        byte[][] split = ArrayUtils.splitArray(encapsulated.payload.array(), session.getMaximumTransferUnit()
-                - CustomPacket.calculateDummy() - EncapsulatedPacket.calculateDummy(encapsulated.reliability, true));
-        EncapsulatedPacket[] splitPackets = new EncapsulatedPacket[split.length];
+        ByteBuf payload = encapsulated.payload.buffer();
+        int length = encapsulated.payload.size();
+        int splitSize = session.getMaximumTransferUnit() - CustomPacket.calculateDummy()
+                - EncapsulatedPacket.calculateDummy(encapsulated.reliability, true);
+        int splitCount = (length + splitSize - 1) / splitSize;
+        EncapsulatedPacket[] splitPackets = new EncapsulatedPacket[splitCount];
 
         // Encode encapsulated packets
-        for (int i = 0; i < split.length; i++) {
+        for (int i = 0; i < splitCount; i++) {
             // Set the base parameters
+            int offset = i * splitSize;
             EncapsulatedPacket encapsulatedSplit = new EncapsulatedPacket();
             encapsulatedSplit.reliability = encapsulated.reliability;
-            encapsulatedSplit.payload = new Packet(split[i]);
+            encapsulatedSplit.payload = new Packet(
+                    payload.retainedSlice(offset, Math.min(splitSize, length - offset)).asReadOnly());
 
             // Set reliability specific parameters
             encapsulatedSplit.messageIndex = (encapsulated.reliability.isReliable() ? session.bumpMessageIndex()
@@ -113,7 +134,7 @@ public class SplitPacket {
 
             // Set the split related parameters
             encapsulatedSplit.split = true;
-            encapsulatedSplit.splitCount = split.length;
+            encapsulatedSplit.splitCount = splitCount;
             encapsulatedSplit.splitId = encapsulated.splitId;
             encapsulatedSplit.splitIndex = i;
             splitPackets[i] = encapsulatedSplit;
@@ -136,6 +157,28 @@ public class SplitPacket {
         return this.splitCount;
     }
 
+    /**
+     * @return the amount of payload bytes held by every split packet that is
+     * still being assembled.
+     */
+    public static long getTotalSize() {
+        return totalSize.get();
+    }
+
+    /**
+     * @return the amount of payload bytes received so far.
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return when the last part of the split packet was received.
+     */
+    public long getLastUpdateTime() {
+        return this.lastUpdateTime;
+    }
+
     /**
      * @return the reliability of the split packet.
      */
@@ -143,9 +186,30 @@ public class SplitPacket {
         return this.reliability;
     }
 
+    /**
+     * Releases the payloads received so far, this must be called when the
+     * split packet is discarded before it is complete.
+     */
+    public void release() {
+        for (int i = 0; i < payloads.length; i++) {
+            if (payloads[i] != null) {
+                payloads[i].release();
+                payloads[i] = null;
+            }
+        }
+        for (int i = 0; i < received.length; i++) {
+            received[i] = 0L;
+        }
+        this.receivedCount = 0;
+        totalSize.addAndGet(-this.size);
+        this.size = 0;
+    }
+
     /**
      * Updates the data for the split packet while also verifying that the
      * specified <code>EncapsulatedPacket</code> belongs to this split packet.
+     * The split packet takes over the payload of the
+     * <code>EncapsulatedPacket</code>.
      *
      * @param encapsulated the <code>EncapsulatedPacket</code> being used to update the
      *                     data.
@@ -155,17 +219,34 @@ public class SplitPacket {
         // Update payload data
         if (encapsulated.split != true || encapsulated.splitId != this.splitId
                 || encapsulated.splitCount != this.splitCount || encapsulated.reliability != this.reliability) {
+            encapsulated.payload.release();
             throw new IllegalArgumentException("This split packet does not belong to this one");
         }
-        payloads.put(encapsulated.splitIndex, encapsulated.payload);
+        int splitIndex = encapsulated.splitIndex;
+        if (splitIndex < 0 || splitIndex >= this.splitCount) {
+            encapsulated.payload.release();
+            throw new IllegalArgumentException("Split index must be lower than the split count");
+        }
+        long bit = 1L << splitIndex;
+        if ((received[splitIndex >> 6] & bit) != 0) {
+            encapsulated.payload.release();
+            return null; // Duplicate, the first copy is kept
+        }
+        received[splitIndex >> 6] |= bit;
+        payloads[splitIndex] = encapsulated.payload;
+        this.size += encapsulated.payload.size();
+        this.lastUpdateTime = System.currentTimeMillis();
+        totalSize.addAndGet(encapsulated.payload.size());
 
-        // If the map is large enough then put the packet together and return it
-        if (payloads.size() >= this.splitCount) {
-            Packet finalPayload = new Packet();
-            for (int i = 0; i < payloads.size(); i++) {
-                finalPayload.write(payloads.get(i).array());
+        // Once every part has arrived join them into a single buffer
+        if (++this.receivedCount >= this.splitCount) {
+            CompositeByteBuf finalPayload = PacketAllocator.compositeBuffer(this.splitCount);
+            for (int i = 0; i < payloads.length; i++) {
+                finalPayload.addComponent(true, payloads[i].transferBuffer());
+                payloads[i] = null;
             }
-            return finalPayload;
+            this.release();
+            return new Packet(finalPayload);
         }
 
         // The packet is not yet ready
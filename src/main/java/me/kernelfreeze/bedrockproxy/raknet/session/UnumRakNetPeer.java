@@ -49,7 +49,8 @@ public interface UnumRakNetPeer {
      *
      * @param reliability the reliability of the packet.
      * @param channel     the channel to send the packet on.
-     * @param packet      the packet to send.
+     * @param packet      the packet to send, the peer takes ownership of it and
+     *                    releases it once it is no longer needed.
      * @throws InvalidChannelException if the channel is higher than the maximum.
      */
     void sendMessage(Reliability reliability, int channel, Packet packet);
@@ -0,0 +1,78 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.session.congestion;
+
+/**
+ * A Reno style additive increase, multiplicative decrease controller. The
+ * window grows by one datagram per acknowledgement during slow start and by
+ * one datagram per round trip after that, and is halved at most once per
+ * round trip when datagrams are lost.
+ *
+ * @author KernelFreeze
+ */
+public class AimdCongestionController implements CongestionController {
+
+    private double window;
+    private double slowStartThreshold;
+    private long lastReductionTime;
+
+    public AimdCongestionController() {
+        this.window = INITIAL_WINDOW;
+        this.slowStartThreshold = MAXIMUM_WINDOW;
+        this.lastReductionTime = -1;
+    }
+
+    @Override
+    public int getCongestionWindow() {
+        return (int) this.window;
+    }
+
+    @Override
+    public void onAcknowledge(long currentTime, long roundTripTime) {
+        if (this.window < this.slowStartThreshold) {
+            this.window += 1.0D;
+        } else {
+            this.window += 1.0D / this.window;
+        }
+        this.window = Math.min(this.window, MAXIMUM_WINDOW);
+    }
+
+    @Override
+    public void onLoss(long currentTime, long roundTripTime, boolean timeout) {
+        if (lastReductionTime >= 0 && currentTime - lastReductionTime < Math.max(roundTripTime, 1L)) {
+            return; // Already reacted to this loss burst
+        }
+        this.slowStartThreshold = Math.max(this.window / 2.0D, MINIMUM_WINDOW);
+        this.window = (timeout ? MINIMUM_WINDOW : this.slowStartThreshold);
+        this.lastReductionTime = currentTime;
+    }
+
+}
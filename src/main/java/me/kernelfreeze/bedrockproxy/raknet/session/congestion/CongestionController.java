@@ -0,0 +1,72 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.session.congestion;
+
+/**
+ * Used by <code>RakNetSession</code> to decide how many reliable datagrams it
+ * may have in flight at once. The controller is fed every acknowledgement
+ * and every loss the session sees, and is only ever called from the event
+ * loop of its session.
+ *
+ * @author KernelFreeze
+ */
+public interface CongestionController {
+
+    int MINIMUM_WINDOW = 2;
+    int INITIAL_WINDOW = 16;
+    int MAXIMUM_WINDOW = 1024;
+
+    /**
+     * @return how many unacknowledged reliable datagrams the session may have
+     * in flight.
+     */
+    int getCongestionWindow();
+
+    /**
+     * Called when a datagram is acknowledged.
+     *
+     * @param currentTime   the current time.
+     * @param roundTripTime the smoothed round trip time of the session.
+     */
+    void onAcknowledge(long currentTime, long roundTripTime);
+
+    /**
+     * Called when a datagram is lost.
+     *
+     * @param currentTime   the current time.
+     * @param roundTripTime the smoothed round trip time of the session.
+     * @param timeout       true if the loss was detected because the
+     *                      retransmission timer expired rather than by a
+     *                      NACK.
+     */
+    void onLoss(long currentTime, long roundTripTime, boolean timeout);
+
+}
@@ -0,0 +1,107 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.session.congestion;
+
+/**
+ * A CUBIC controller as described in RFC 8312. After a loss the window grows
+ * along a cubic curve that levels off around the window the loss happened
+ * at, which recovers much faster than additive increase on paths with a
+ * large bandwidth-delay product while staying gentle near the previous
+ * limit.
+ *
+ * @author KernelFreeze
+ */
+public class CubicCongestionController implements CongestionController {
+
+    private static final double SCALING_CONSTANT = 0.4D;
+    private static final double DECREASE_FACTOR = 0.7D;
+
+    private double window;
+    private double slowStartThreshold;
+    private double lastMaximumWindow;
+    private double inflectionTime;
+    private long epochStart;
+    private long lastReductionTime;
+
+    public CubicCongestionController() {
+        this.window = INITIAL_WINDOW;
+        this.slowStartThreshold = MAXIMUM_WINDOW;
+        this.epochStart = -1;
+        this.lastReductionTime = -1;
+    }
+
+    @Override
+    public int getCongestionWindow() {
+        return (int) this.window;
+    }
+
+    @Override
+    public void onAcknowledge(long currentTime, long roundTripTime) {
+        if (this.window < this.slowStartThreshold) {
+            this.window = Math.min(this.window + 1.0D, MAXIMUM_WINDOW);
+            return;
+        }
+
+        // Start a new congestion avoidance epoch if needed
+        if (this.epochStart < 0) {
+            this.epochStart = currentTime;
+            if (this.window < this.lastMaximumWindow) {
+                this.inflectionTime = Math.cbrt((this.lastMaximumWindow - this.window) / SCALING_CONSTANT);
+            } else {
+                this.inflectionTime = 0.0D;
+                this.lastMaximumWindow = this.window;
+            }
+        }
+
+        // Grow towards where the cubic curve will be one round trip from now
+        double time = (currentTime - this.epochStart + Math.max(roundTripTime, 0L)) / 1000.0D;
+        double target = SCALING_CONSTANT * Math.pow(time - this.inflectionTime, 3) + this.lastMaximumWindow;
+        if (target > this.window) {
+            this.window += (target - this.window) / this.window;
+        } else {
+            this.window += 0.01D / this.window;
+        }
+        this.window = Math.min(this.window, MAXIMUM_WINDOW);
+    }
+
+    @Override
+    public void onLoss(long currentTime, long roundTripTime, boolean timeout) {
+        if (lastReductionTime >= 0 && currentTime - lastReductionTime < Math.max(roundTripTime, 1L)) {
+            return; // Already reacted to this loss burst
+        }
+        this.lastMaximumWindow = this.window;
+        this.slowStartThreshold = Math.max(this.window * DECREASE_FACTOR, MINIMUM_WINDOW);
+        this.window = (timeout ? MINIMUM_WINDOW : this.slowStartThreshold);
+        this.epochStart = -1;
+        this.lastReductionTime = currentTime;
+    }
+
+}
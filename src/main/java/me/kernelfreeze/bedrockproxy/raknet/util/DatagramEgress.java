@@ -0,0 +1,190 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.util;
+
+import io.netty.channel.Channel;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Used to batch the datagrams written to a channel. Datagrams written on the
+ * event loop of the channel are only flushed once the current task, such as
+ * a read or a session tick, is over. This way every datagram produced by one
+ * tick goes out in a single flush, which the epoll transport turns into a
+ * single <code>sendmmsg</code> call.
+ *
+ * @author KernelFreeze
+ */
+public class DatagramEgress {
+
+    private static final AttributeKey<DatagramEgress> EGRESS = AttributeKey.valueOf("raknet-egress");
+
+    /**
+     * The most datagrams a single <code>sendmmsg</code> call sends.
+     */
+    private static final int MAX_DATAGRAMS_PER_SYSCALL = 1024;
+
+    private final Channel channel;
+    private final boolean batching;
+    private final Runnable flushTask;
+    private final LongAdder datagrams;
+    private final LongAdder flushes;
+    private final LongAdder syscalls;
+    private int pending;
+    // Syscall rate
+    private volatile long windowStart;
+    private long windowSyscalls;
+    private volatile long syscallsLastSecond;
+
+    /**
+     * Constructs a <code>DatagramEgress</code> for the specified channel.
+     *
+     * @param channel the channel to write to.
+     */
+    private DatagramEgress(Channel channel) {
+        this.channel = channel;
+        this.batching = (channel instanceof EpollDatagramChannel);
+        this.flushTask = this::flush;
+        this.datagrams = new LongAdder();
+        this.flushes = new LongAdder();
+        this.syscalls = new LongAdder();
+        this.windowStart = System.currentTimeMillis();
+    }
+
+    /**
+     * @param channel the channel.
+     * @return the <code>DatagramEgress</code> of the specified channel.
+     */
+    public static DatagramEgress of(Channel channel) {
+        DatagramEgress egress = channel.attr(EGRESS).get();
+        if (egress == null) {
+            DatagramEgress created = new DatagramEgress(channel);
+            egress = channel.attr(EGRESS).setIfAbsent(created);
+            if (egress == null) {
+                egress = created;
+            }
+        }
+        return egress;
+    }
+
+    /**
+     * Sends a datagram. If this is called on the event loop of the channel
+     * the datagram is flushed once the current task is over, otherwise it is
+     * flushed right away.
+     *
+     * @param packet the datagram to send.
+     */
+    public void send(DatagramPacket packet) {
+        datagrams.increment();
+        if (!channel.eventLoop().inEventLoop()) {
+            flushes.increment();
+            syscalls.increment();
+            channel.writeAndFlush(packet);
+            return;
+        }
+
+        channel.write(packet);
+        if (this.pending++ == 0) {
+            channel.eventLoop().execute(flushTask);
+        }
+    }
+
+    /**
+     * Flushes the datagrams written since the last flush, this must be called
+     * on the event loop of the channel.
+     */
+    public void flush() {
+        if (this.pending <= 0) {
+            return; // Nothing to flush
+        }
+
+        // Without sendmmsg every datagram is its own syscall
+        long flushSyscalls = (batching ? (pending + MAX_DATAGRAMS_PER_SYSCALL - 1) / MAX_DATAGRAMS_PER_SYSCALL
+                : pending);
+        this.pending = 0;
+        channel.flush();
+
+        // Update metrics
+        flushes.increment();
+        syscalls.add(flushSyscalls);
+        long currentTime = System.currentTimeMillis();
+        if (currentTime - this.windowStart >= 1000L) {
+            this.syscallsLastSecond = (currentTime - this.windowStart < 2000L ? this.windowSyscalls : 0L);
+            this.windowSyscalls = 0;
+            this.windowStart = currentTime;
+        }
+        this.windowSyscalls += flushSyscalls;
+    }
+
+    /**
+     * @return true if the transport sends a whole flush with as few syscalls
+     * as possible.
+     */
+    public boolean isBatching() {
+        return this.batching;
+    }
+
+    /**
+     * @return the amount of datagrams sent through the channel.
+     */
+    public long getDatagramsSent() {
+        return datagrams.sum();
+    }
+
+    /**
+     * @return the amount of times the channel was flushed.
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * @return the estimated amount of send syscalls made for the channel.
+     */
+    public long getSyscalls() {
+        return syscalls.sum();
+    }
+
+    /**
+     * @return the estimated amount of send syscalls made for the channel in
+     * the last full second.
+     */
+    public long getSyscallsPerSecond() {
+        if (System.currentTimeMillis() - this.windowStart >= 2000L) {
+            return 0L; // Nothing has been flushed for a while
+        }
+        return this.syscallsLastSecond;
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.util;
+
+import java.util.Arrays;
+
+/**
+ * A sorted set of <code>int</code>s stored as inclusive ranges, adjacent and
+ * overlapping ranges are merged as they are added. This is used to keep track
+ * of acknowledge records without allocating an object per index.
+ *
+ * @author KernelFreeze
+ */
+public class IntRangeSet {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private int[] ranges;
+    private int size;
+
+    /**
+     * Constructs an empty <code>IntRangeSet</code>.
+     */
+    public IntRangeSet() {
+        this.ranges = new int[DEFAULT_CAPACITY << 1];
+    }
+
+    /**
+     * @return the amount of ranges in the set.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if the set contains no ranges.
+     */
+    public boolean isEmpty() {
+        return (this.size == 0);
+    }
+
+    /**
+     * @param range the range.
+     * @return the first value of the specified range.
+     */
+    public int getStart(int range) {
+        if (range < 0 || range >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(range));
+        }
+        return ranges[range << 1];
+    }
+
+    /**
+     * @param range the range.
+     * @return the last value of the specified range.
+     */
+    public int getEnd(int range) {
+        if (range < 0 || range >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(range));
+        }
+        return ranges[(range << 1) + 1];
+    }
+
+    /**
+     * @param value the value to check.
+     * @return true if the set contains the value.
+     */
+    public boolean contains(int value) {
+        int range = this.search(value);
+        return range < size && ranges[range << 1] <= value;
+    }
+
+    /**
+     * Adds the specified value to the set.
+     *
+     * @param value the value to add.
+     */
+    public void add(int value) {
+        this.add(value, value);
+    }
+
+    /**
+     * Adds every value from the start to the end of the range to the set.
+     *
+     * @param start the first value of the range.
+     * @param end   the last value of the range.
+     */
+    public void add(int start, int end) {
+        if (end < start) {
+            throw new IllegalArgumentException("Range end must not be lower than its start");
+        }
+
+        // Values mostly arrive in order, so try to extend the last range first
+        if (size > 0 && start >= ranges[(size << 1) - 2]) {
+            int last = ranges[(size << 1) - 1];
+            if (start <= last || start - 1 == last) {
+                ranges[(size << 1) - 1] = Math.max(last, end);
+                return;
+            }
+            this.insert(size, start, end);
+            return;
+        }
+
+        // Find the first range that could be merged with the new one
+        int first = this.search(start == Integer.MIN_VALUE ? start : start - 1);
+        int last = first;
+        while (last < size && (end == Integer.MAX_VALUE || ranges[last << 1] <= end + 1)) {
+            start = Math.min(start, ranges[last << 1]);
+            end = Math.max(end, ranges[(last << 1) + 1]);
+            last++;
+        }
+        if (first == last) {
+            this.insert(first, start, end);
+            return;
+        }
+
+        // Replace the merged ranges with a single one
+        ranges[first << 1] = start;
+        ranges[(first << 1) + 1] = end;
+        System.arraycopy(ranges, last << 1, ranges, (first + 1) << 1, (size - last) << 1);
+        this.size -= last - first - 1;
+    }
+
+    /**
+     * Adds the specified ranges of another set to this set.
+     *
+     * @param set   the set to add the ranges from.
+     * @param from  the first range to add.
+     * @param until the range to stop at, exclusive.
+     */
+    public void addAll(IntRangeSet set, int from, int until) {
+        for (int i = from; i < until; i++) {
+            this.add(set.getStart(i), set.getEnd(i));
+        }
+    }
+
+    /**
+     * Removes every range from the set.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Returns the first range whose end is not lower than the specified
+     * value, or the amount of ranges if there is none.
+     */
+    private int search(int value) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (ranges[(middle << 1) + 1] < value) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void insert(int range, int start, int end) {
+        if ((size << 1) == ranges.length) {
+            this.ranges = Arrays.copyOf(ranges, ranges.length << 1);
+        }
+        System.arraycopy(ranges, range << 1, ranges, (range + 1) << 1, (size - range) << 1);
+        ranges[range << 1] = start;
+        ranges[(range << 1) + 1] = end;
+        this.size++;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(ranges[i << 1]);
+            if (ranges[i << 1] != ranges[(i << 1) + 1]) {
+                builder.append(':').append(ranges[(i << 1) + 1]);
+            }
+        }
+        return builder.append(']').toString();
+    }
+
+}
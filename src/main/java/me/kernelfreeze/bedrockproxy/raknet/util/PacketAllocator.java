@@ -0,0 +1,115 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Used to allocate the buffers of packets and the datagrams received by
+ * channels. By default buffers are pooled direct buffers, so they must be
+ * released once they are no longer needed or their memory is never returned
+ * to the pool.
+ *
+ * @author KernelFreeze
+ */
+public class PacketAllocator {
+
+    private static volatile ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+    private PacketAllocator() {
+        // Static class
+    }
+
+    /**
+     * @return the allocator packets are allocated with.
+     */
+    public static ByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
+    /**
+     * Sets the allocator packets are allocated with.
+     *
+     * @param allocator the new allocator.
+     */
+    public static void setAllocator(ByteBufAllocator allocator) {
+        if (allocator == null) {
+            throw new NullPointerException();
+        }
+        PacketAllocator.allocator = allocator;
+    }
+
+    /**
+     * @return a new direct buffer.
+     */
+    public static ByteBuf buffer() {
+        return allocator.directBuffer();
+    }
+
+    /**
+     * @param initialCapacity the initial capacity of the buffer.
+     * @return a new direct buffer with the specified initial capacity.
+     */
+    public static ByteBuf buffer(int initialCapacity) {
+        return allocator.directBuffer(initialCapacity);
+    }
+
+    /**
+     * @param maxNumComponents the maximum amount of components the buffer can
+     *                         hold before they are consolidated.
+     * @return a new composite direct buffer.
+     */
+    public static CompositeByteBuf compositeBuffer(int maxNumComponents) {
+        return allocator.compositeDirectBuffer(maxNumComponents);
+    }
+
+    /**
+     * @param data the data to copy.
+     * @return a new direct buffer containing a copy of the specified data.
+     */
+    public static ByteBuf copiedBuffer(byte[] data) {
+        return allocator.directBuffer(data.length).writeBytes(data);
+    }
+
+    /**
+     * @param data the data to copy.
+     * @return a new direct buffer containing a copy of the readable bytes of
+     * the specified buffer.
+     */
+    public static ByteBuf copiedBuffer(ByteBuf data) {
+        return allocator.directBuffer(data.readableBytes()).writeBytes(data, data.readerIndex(),
+                data.readableBytes());
+    }
+
+}
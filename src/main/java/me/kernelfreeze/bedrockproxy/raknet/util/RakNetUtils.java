@@ -74,7 +74,8 @@ public class RakNetUtils {
      * @param packet  the packet to send.
      * @param timeout the interval of which the packet is sent.
      * @param retries how many times the packet will be sent.
-     * @return the received packet if it was received.
+     * @return the received packet if it was received, the caller must release
+     * it.
      */
     private static RakNetPacket createBootstrapAndSend(InetSocketAddress address, Packet packet, long timeout,
                                                        int retries) {
@@ -88,11 +89,12 @@ public class RakNetUtils {
             BootstrapHandler handler = new BootstrapHandler();
             bootstrap.group(group).channel(NioDatagramChannel.class).option(ChannelOption.SO_BROADCAST, true)
                     .option(ChannelOption.SO_RCVBUF, RakNet.MINIMUM_TRANSFER_UNIT)
-                    .option(ChannelOption.SO_SNDBUF, RakNet.MINIMUM_TRANSFER_UNIT).handler(handler);
+                    .option(ChannelOption.SO_SNDBUF, RakNet.MINIMUM_TRANSFER_UNIT)
+                    .option(ChannelOption.ALLOCATOR, PacketAllocator.getAllocator()).handler(handler);
 
             // Create channel, send packet, and close it
             Channel channel = bootstrap.bind(0).sync().channel();
-            channel.writeAndFlush(new DatagramPacket(packet.buffer(), address));
+            channel.writeAndFlush(new DatagramPacket(packet.transferBuffer(), address));
 
             // Wait for packet to come in, return null on timeout
             while (retries > 0) {
@@ -130,12 +132,16 @@ public class RakNetUtils {
         // Wait for response to come in
         RakNetPacket packet = createBootstrapAndSend(address, connectionRequestOne, 1000, SERVER_PING_RETRIES);
         if (packet != null) {
-            if (packet.getId() == MessageIdentifier.ID_OPEN_CONNECTION_REPLY_1) {
-                OpenConnectionResponseOne connectionResponseOne = new OpenConnectionResponseOne(packet);
-                connectionResponseOne.decode();
-                if (connectionResponseOne.magic == true) {
-                    return true;
+            try {
+                if (packet.getId() == MessageIdentifier.ID_OPEN_CONNECTION_REPLY_1) {
+                    OpenConnectionResponseOne connectionResponseOne = new OpenConnectionResponseOne(packet);
+                    connectionResponseOne.decode();
+                    if (connectionResponseOne.magic == true) {
+                        return true;
+                    }
                 }
+            } finally {
+                packet.release();
             }
         }
         return false;
@@ -174,17 +180,21 @@ public class RakNetUtils {
         // Wait for response to come in
         RakNetPacket packet = createBootstrapAndSend(address, connectionRequestOne, 1000, SERVER_PING_RETRIES);
         if (packet != null) {
-            if (packet.getId() == MessageIdentifier.ID_OPEN_CONNECTION_REPLY_1) {
-                OpenConnectionResponseOne connectionResponseOne = new OpenConnectionResponseOne(packet);
-                connectionResponseOne.decode();
-                if (connectionResponseOne.magic == true) {
-                    return true;
-                }
-            } else if (packet.getId() == MessageIdentifier.ID_INCOMPATIBLE_PROTOCOL_VERSION) {
-                IncompatibleProtocol incompatibleProtocol = new IncompatibleProtocol(packet);
-                incompatibleProtocol.decode();
+            try {
+                if (packet.getId() == MessageIdentifier.ID_OPEN_CONNECTION_REPLY_1) {
+                    OpenConnectionResponseOne connectionResponseOne = new OpenConnectionResponseOne(packet);
+                    connectionResponseOne.decode();
+                    if (connectionResponseOne.magic == true) {
+                        return true;
+                    }
+                } else if (packet.getId() == MessageIdentifier.ID_INCOMPATIBLE_PROTOCOL_VERSION) {
+                    IncompatibleProtocol incompatibleProtocol = new IncompatibleProtocol(packet);
+                    incompatibleProtocol.decode();
 
-                return false;
+                    return false;
+                }
+            } finally {
+                packet.release();
             }
         }
         return false;
@@ -222,12 +232,16 @@ public class RakNetUtils {
         // Wait for response to come in
         RakNetPacket packet = createBootstrapAndSend(address, ping, 1000, IDENTIFIER_RETRIES);
         if (packet != null) {
-            if (packet.getId() == MessageIdentifier.ID_UNCONNECTED_PONG) {
-                UnconnectedPong pong = new UnconnectedPong(packet);
-                pong.decode();
-                if (pong.magic == true) {
-                    return pong.identifier;
+            try {
+                if (packet.getId() == MessageIdentifier.ID_UNCONNECTED_PONG) {
+                    UnconnectedPong pong = new UnconnectedPong(packet);
+                    pong.decode();
+                    if (pong.magic == true) {
+                        return pong.identifier;
+                    }
                 }
+            } finally {
+                packet.release();
             }
         }
         return null;
@@ -432,7 +446,11 @@ public class RakNetUtils {
         @Override
         public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
             if (msg instanceof DatagramPacket) {
-                this.packet = new RakNetPacket(((DatagramPacket) msg).content().retain());
+                if (this.packet == null) {
+                    this.packet = new RakNetPacket((DatagramPacket) msg);
+                } else {
+                    ((DatagramPacket) msg).release(); // Only the first response is used
+                }
             }
         }
 
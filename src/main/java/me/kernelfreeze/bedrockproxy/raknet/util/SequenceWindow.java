@@ -0,0 +1,162 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.util;
+
+/**
+ * Used to keep track of which 24-bit indexes have been received using a
+ * fixed amount of memory. The window starts at the lowest index that has not
+ * been received yet, every index before it is considered received. Indexes
+ * that are too far ahead slide the window forward, forgetting the oldest
+ * indexes it was still waiting for.
+ *
+ * @author KernelFreeze
+ */
+public class SequenceWindow {
+
+    public static final int INDEX_MASK = 0xFFFFFF;
+    private static final int HALF_INDEX_RANGE = 0x800000;
+
+    private final long[] bits;
+    private final int mask;
+    private int start;
+
+    /**
+     * Constructs a <code>SequenceWindow</code> that can keep track of the
+     * specified amount of indexes at once.
+     *
+     * @param size the size of the window, this must be a power of two.
+     */
+    public SequenceWindow(int size) {
+        if (size < 64 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two no smaller than 64");
+        }
+        this.bits = new long[size >> 6];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the distance from the first index to the second index, taking
+     * wraparound of the 24-bit index space into account.
+     *
+     * @param from the first index.
+     * @param to   the second index.
+     * @return the distance between the indexes, negative if the second index
+     * comes before the first one.
+     */
+    public static int distance(int from, int to) {
+        int distance = (to - from) & INDEX_MASK;
+        return (distance >= HALF_INDEX_RANGE ? distance - (INDEX_MASK + 1) : distance);
+    }
+
+    /**
+     * @return the size of the window.
+     */
+    public int size() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the lowest index that has not been received yet.
+     */
+    public int getStart() {
+        return this.start;
+    }
+
+    /**
+     * @param index the index to check.
+     * @return true if the index has already been received or is too old to be
+     * tracked.
+     */
+    public boolean contains(int index) {
+        int distance = distance(start, index);
+        if (distance < 0) {
+            return true;
+        } else if (distance > mask) {
+            return false;
+        }
+        return this.get(index);
+    }
+
+    /**
+     * Marks the specified index as received.
+     *
+     * @param index the index to mark.
+     * @return true if the index had not been received yet, false if it is a
+     * duplicate.
+     */
+    public boolean add(int index) {
+        int distance = distance(start, index);
+        if (distance < 0) {
+            return false; // Before the window, already received
+        } else if (distance > mask) {
+            this.slide(distance - mask);
+        } else if (this.get(index)) {
+            return false; // Already received
+        }
+
+        // Mark the index and move the window past everything received
+        bits[(index & mask) >> 6] |= 1L << index;
+        while (this.get(start)) {
+            this.clear(start);
+            this.start = (start + 1) & INDEX_MASK;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the start of the window forward without marking the skipped
+     * indexes as received.
+     *
+     * @param amount how far to move the window.
+     */
+    private void slide(int amount) {
+        if (amount > mask) {
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = 0L;
+            }
+            this.start = (start + amount) & INDEX_MASK;
+            return;
+        }
+        for (int i = 0; i < amount; i++) {
+            this.clear(start);
+            this.start = (start + 1) & INDEX_MASK;
+        }
+    }
+
+    private boolean get(int index) {
+        return (bits[(index & mask) >> 6] & (1L << index)) != 0;
+    }
+
+    private void clear(int index) {
+        bits[(index & mask) >> 6] &= ~(1L << index);
+    }
+
+}
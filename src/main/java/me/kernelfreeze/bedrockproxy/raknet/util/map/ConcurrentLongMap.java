@@ -0,0 +1,306 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.util.map;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class is used to map longs to values from multiple threads without
+ * boxing the keys. Lookups never lock, they probe an open addressed table
+ * whose slots are only ever replaced as a whole. Modifications are
+ * serialized on the map itself, as they are expected to be far less common
+ * than lookups.
+ *
+ * @author KernelFreeze
+ */
+public class ConcurrentLongMap<T> {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final Entry<?> TOMBSTONE = new Entry<Object>(0L, null);
+
+    private volatile AtomicReferenceArray<Entry<T>> table;
+    private volatile int size;
+    private int used;
+
+    /**
+     * Constructs a <code>ConcurrentLongMap</code> with the default capacity.
+     */
+    public ConcurrentLongMap() {
+        this.table = new AtomicReferenceArray<Entry<T>>(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return the amount of mappings in the map.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if the map contains no mappings.
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @param key the key whose presence in this map is to be tested.
+     * @return true if this map contains a mapping for the specified key.
+     */
+    public boolean containsKey(long key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * <code>null</code> if this map contains no mapping for the key.
+     *
+     * @param key the key the value is mapped to.
+     * @return the value to which the specified key is mapped.
+     */
+    public T get(long key) {
+        AtomicReferenceArray<Entry<T>> table = this.table;
+        int mask = table.length() - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            Entry<T> entry = table.get(i);
+            if (entry == null) {
+                return null;
+            } else if (entry != TOMBSTONE && entry.key == key) {
+                return entry.value;
+            }
+        }
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map. If
+     * the map previously contained a mapping for the key, the old value is
+     * replaced.
+     *
+     * @param key   the key with which the specified value is to be associated.
+     * @param value the value to be associated with the specified key.
+     * @return the previous value associated with the key, or
+     * <code>null</code> if there was no mapping for the key.
+     * @throws NullPointerException if the value is <code>null</code>.
+     */
+    public synchronized T put(long key, T value) throws NullPointerException {
+        return this.insert(key, value, false);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map if it
+     * is not already associated with a value.
+     *
+     * @param key   the key with which the specified value is to be associated.
+     * @param value the value to be associated with the specified key.
+     * @return the current value associated with the key, or <code>null</code>
+     * if there was no mapping for the key and the value was added.
+     * @throws NullPointerException if the value is <code>null</code>.
+     */
+    public synchronized T putIfAbsent(long key, T value) throws NullPointerException {
+        return this.insert(key, value, true);
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key the key whose mapping is to be removed from the map.
+     * @return the previous value associated with the key, or
+     * <code>null</code> if there was no mapping for the key.
+     */
+    public synchronized T remove(long key) {
+        return this.delete(key, null);
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map only if it is
+     * currently mapped to the specified value.
+     *
+     * @param key   the key whose mapping is to be removed from the map.
+     * @param value the value expected to be associated with the key.
+     * @return true if the value was removed.
+     */
+    public synchronized boolean remove(long key, T value) {
+        return value != null && this.delete(key, value) != null;
+    }
+
+    /**
+     * @return a snapshot of the values in the map.
+     */
+    public List<T> values() {
+        AtomicReferenceArray<Entry<T>> table = this.table;
+        ArrayList<T> values = new ArrayList<T>(this.size);
+        for (int i = 0; i < table.length(); i++) {
+            Entry<T> entry = table.get(i);
+            if (entry != null && entry != TOMBSTONE) {
+                values.add(entry.value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public synchronized void clear() {
+        this.table = new AtomicReferenceArray<Entry<T>>(DEFAULT_CAPACITY);
+        this.size = 0;
+        this.used = 0;
+    }
+
+    /**
+     * Puts the value in the table, must be called while holding the lock.
+     *
+     * @param key          the key.
+     * @param value        the value.
+     * @param onlyIfAbsent whether or not an existing value should be kept.
+     * @return the previous value associated with the key.
+     */
+    private T insert(long key, T value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        AtomicReferenceArray<Entry<T>> table = this.table;
+        int mask = table.length() - 1;
+        int free = -1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            Entry<T> entry = table.get(i);
+            if (entry == null) {
+                break;
+            } else if (entry == TOMBSTONE) {
+                free = (free < 0 ? i : free);
+            } else if (entry.key == key) {
+                if (!onlyIfAbsent) {
+                    table.set(i, new Entry<T>(key, value));
+                }
+                return entry.value;
+            }
+        }
+
+        // The key is not in the table, reuse a removed slot if there is one
+        if (free < 0) {
+            if ((this.used + 1) * 2 > table.length()) {
+                this.resize();
+                return this.insert(key, value, onlyIfAbsent);
+            }
+            free = hash(key) & mask;
+            while (table.get(free) != null) {
+                free = (free + 1) & mask;
+            }
+            this.used++;
+        }
+        table.set(free, new Entry<T>(key, value));
+        this.size++;
+        return null;
+    }
+
+    /**
+     * Removes the key from the table, must be called while holding the lock.
+     *
+     * @param key   the key.
+     * @param value the value the key must be mapped to, <code>null</code> for
+     *              any value.
+     * @return the removed value.
+     */
+    @SuppressWarnings("unchecked")
+    private T delete(long key, Object value) {
+        AtomicReferenceArray<Entry<T>> table = this.table;
+        int mask = table.length() - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            Entry<T> entry = table.get(i);
+            if (entry == null) {
+                return null;
+            } else if (entry != TOMBSTONE && entry.key == key) {
+                if (value != null && entry.value != value) {
+                    return null;
+                }
+                table.set(i, (Entry<T>) TOMBSTONE);
+                this.size--;
+                return entry.value;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the table without removed slots, growing it if it is getting
+     * full. Readers still probing the old table see a consistent snapshot.
+     */
+    private void resize() {
+        AtomicReferenceArray<Entry<T>> table = this.table;
+        int capacity = table.length();
+        while (this.size * 4 >= capacity) {
+            capacity <<= 1;
+        }
+        AtomicReferenceArray<Entry<T>> resized = new AtomicReferenceArray<Entry<T>>(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < table.length(); i++) {
+            Entry<T> entry = table.get(i);
+            if (entry != null && entry != TOMBSTONE) {
+                int slot = hash(entry.key) & mask;
+                while (resized.get(slot) != null) {
+                    slot = (slot + 1) & mask;
+                }
+                resized.set(slot, entry);
+            }
+        }
+        this.used = this.size;
+        this.table = resized;
+    }
+
+    /**
+     * @param key the key.
+     * @return the spread hash of the key.
+     */
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * A key and its value, slots are replaced rather than modified so readers
+     * never see a key with the wrong value.
+     *
+     * @author KernelFreeze
+     */
+    private static final class Entry<T> {
+
+        private final long key;
+        private final T value;
+
+        private Entry(long key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+
+    }
+
+}
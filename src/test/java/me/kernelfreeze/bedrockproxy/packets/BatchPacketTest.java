@@ -0,0 +1,116 @@
+package me.kernelfreeze.bedrockproxy.packets;
+
+import io.netty.buffer.ByteBuf;
+import me.kernelfreeze.bedrockproxy.Compression;
+import me.kernelfreeze.bedrockproxy.PacketRegistry;
+import me.kernelfreeze.bedrockproxy.raknet.Packet;
+import me.kernelfreeze.bedrockproxy.raknet.RakNetPacket;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.Reliability;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.message.EncapsulatedPacket;
+import me.kernelfreeze.bedrockproxy.raknet.session.SplitPacket;
+import me.kernelfreeze.bedrockproxy.raknet.util.LeakCounter;
+import me.kernelfreeze.bedrockproxy.raknet.util.PacketAllocator;
+import org.junit.Test;
+
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Makes sure the packets read out of a batch share its buffer and give their
+ * reference back once they are released.
+ *
+ * @author KernelFreeze
+ * @since 16/10/26
+ */
+public class BatchPacketTest {
+    static {
+        LeakCounter.install(); // Before any buffer is allocated
+    }
+
+    private static final short BATCH_ID = PacketRegistry.NetworkType.BATCH_PACKET.getId();
+
+    @Test
+    public void readPacketRetainsTheBatch() {
+        ByteBuf buffer = PacketAllocator.buffer().writeByte(BATCH_ID);
+        for (int i = 0; i < 16; i++) {
+            buffer.writeShort(3).writeByte(0x09).writeShort(i);
+        }
+
+        DataPacket batch = new DataPacket(buffer);
+        for (int i = 0; i < 16; i++) {
+            RakNetPacket packet = batch.readPacket();
+            assertEquals(0x09, packet.getId());
+            assertEquals(i, packet.readUShort());
+            assertEquals(2, buffer.refCnt());
+            packet.release();
+            assertEquals(1, buffer.refCnt());
+        }
+        batch.release();
+        assertEquals(0, buffer.refCnt());
+        LeakCounter.assertNoLeaks();
+    }
+
+    @Test
+    public void decodeReleasesEveryPacket() throws DataFormatException {
+        // Batches inside of a batch are too short to be inflated again
+        ByteBuf payload = PacketAllocator.buffer().writeShort(0);
+        for (int i = 0; i < 64; i++) {
+            payload.writeShort(1).writeByte(BATCH_ID);
+        }
+        ByteBuf buffer = PacketAllocator.buffer().writeByte(BATCH_ID);
+        Compression.deflate(payload, buffer);
+        payload.release();
+
+        RakNetPacket packet = new RakNetPacket(buffer);
+        BatchPacket batch = new BatchPacket(packet);
+        batch.decode();
+        assertEquals(0, batch.remaining());
+        batch.release();
+        packet.release();
+        assertEquals(0, buffer.refCnt());
+        LeakCounter.assertNoLeaks();
+    }
+
+    @Test
+    public void decodeReassembledSplitBatch() throws DataFormatException {
+        ByteBuf payload = PacketAllocator.buffer().writeShort(0);
+        for (int i = 0; i < 1024; i++) {
+            payload.writeShort(1).writeByte(BATCH_ID);
+        }
+        ByteBuf buffer = PacketAllocator.buffer().writeByte(BATCH_ID);
+        Compression.deflate(payload, buffer);
+        payload.release();
+
+        // Reassembled split packets are composite buffers of every part
+        int splitCount = 3;
+        int length = (buffer.readableBytes() + splitCount - 1) / splitCount;
+        SplitPacket splitPacket = new SplitPacket(0, splitCount, Reliability.RELIABLE_ORDERED);
+        Packet reassembled = null;
+        for (int i = 0; i < splitCount; i++) {
+            int offset = Math.min(i * length, buffer.writerIndex());
+            EncapsulatedPacket encapsulated = new EncapsulatedPacket();
+            encapsulated.reliability = Reliability.RELIABLE_ORDERED;
+            encapsulated.split = true;
+            encapsulated.splitCount = splitCount;
+            encapsulated.splitIndex = i;
+            encapsulated.payload = new Packet(buffer.retainedSlice(offset,
+                    Math.min(length, buffer.writerIndex() - offset)));
+            assertNull(reassembled);
+            reassembled = splitPacket.update(encapsulated);
+        }
+        buffer.release();
+        assertNotNull(reassembled);
+
+        RakNetPacket packet = new RakNetPacket(reassembled);
+        BatchPacket batch = new BatchPacket(packet);
+        batch.decode();
+        assertEquals(0, batch.remaining());
+        batch.release();
+        reassembled.release();
+        assertEquals(0, SplitPacket.getTotalSize());
+        LeakCounter.assertNoLeaks();
+    }
+}
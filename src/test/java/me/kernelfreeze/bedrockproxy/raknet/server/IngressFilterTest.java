@@ -0,0 +1,118 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import me.kernelfreeze.bedrockproxy.raknet.identifier.Identifier;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Makes sure the <code>IngressFilter</code> charges addresses without a
+ * session to the unconnected budget and that the budget of an address is
+ * shared by every channel.
+ *
+ * @author KernelFreeze
+ */
+public class IngressFilterTest {
+
+    private static final InetSocketAddress SERVER_ADDRESS = new InetSocketAddress("127.0.0.1", 19132);
+    private static final InetSocketAddress CLIENT_ADDRESS = new InetSocketAddress("127.0.0.2", 50000);
+
+    @Test
+    public void validBitDoesNotEarnTheConnectedBudget() {
+        RakNetServer server = this.createServer();
+        IngressFilter filter = new IngressFilter(server);
+        EmbeddedChannel channel = new EmbeddedChannel(filter);
+
+        // Custom packet IDs have the valid bit set, but there is no session
+        for (int i = 0; i < 10; i++) {
+            channel.writeInbound(this.datagram(0x84, CLIENT_ADDRESS));
+        }
+        assertEquals(2, this.drain(channel));
+        assertEquals(8, filter.getDropped());
+        channel.finish();
+    }
+
+    @Test
+    public void channelsShareTheBudgetOfAnAddress() {
+        RakNetServer server = this.createServer();
+        IngressFilter filter = new IngressFilter(server);
+        EmbeddedChannel first = new EmbeddedChannel(filter);
+        EmbeddedChannel second = new EmbeddedChannel(filter);
+
+        // Each port of the client may be hashed to a different channel
+        for (int i = 0; i < 10; i++) {
+            EmbeddedChannel channel = (i % 2 == 0 ? first : second);
+            channel.writeInbound(this.datagram(0x01, new InetSocketAddress(CLIENT_ADDRESS.getAddress(), 50000 + i)));
+        }
+        assertEquals(2, this.drain(first) + this.drain(second));
+        assertEquals(8, filter.getDropped());
+        first.finish();
+        second.finish();
+    }
+
+    /**
+     * @return a server that lets every address send two unconnected packets
+     * and far more connected datagrams, without refilling either.
+     */
+    private RakNetServer createServer() {
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS.getPort(), 1, 1464, new Identifier("Ingress test"));
+        server.setUnconnectedIngressLimit(0, 2);
+        server.setConnectedIngressLimit(0, 1000);
+        return server;
+    }
+
+    private DatagramPacket datagram(int id, InetSocketAddress sender) {
+        return new DatagramPacket(Unpooled.buffer().writeByte(id).writeLong(0L), SERVER_ADDRESS, sender);
+    }
+
+    /**
+     * Releases every datagram that made it through the filter.
+     *
+     * @return the amount of datagrams that made it through.
+     */
+    private int drain(EmbeddedChannel channel) {
+        int count = 0;
+        DatagramPacket datagram;
+        while ((datagram = channel.readInbound()) != null) {
+            datagram.release();
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCountUtil;
+import me.kernelfreeze.bedrockproxy.raknet.Packet;
+import me.kernelfreeze.bedrockproxy.raknet.RakNet;
+import me.kernelfreeze.bedrockproxy.raknet.RakNetPacket;
+import me.kernelfreeze.bedrockproxy.raknet.identifier.Identifier;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.Reliability;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.login.ConnectionRequest;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.login.NewIncomingConnection;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.login.OpenConnectionRequestOne;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.login.OpenConnectionRequestTwo;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.message.CustomPacket;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.message.EncapsulatedPacket;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.message.acknowledge.Acknowledge;
+import me.kernelfreeze.bedrockproxy.raknet.protocol.status.UnconnectedPing;
+import me.kernelfreeze.bedrockproxy.raknet.session.RakNetClientSession;
+import me.kernelfreeze.bedrockproxy.raknet.util.LeakCounter;
+import me.kernelfreeze.bedrockproxy.raknet.util.PacketAllocator;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static me.kernelfreeze.bedrockproxy.raknet.protocol.MessageIdentifier.*;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pushes synthetic traffic from many clients through the pipeline of a
+ * <code>RakNetServer</code> and makes sure that no buffer is leaked along the
+ * way. The traffic covers pings, logins, connected messages that are split,
+ * ordered, duplicated and reordered, acknowledgements and garbage.
+ *
+ * @author KernelFreeze
+ */
+public class RakNetServerLeakTest {
+
+    static {
+        LeakCounter.install(); // Before any buffer is allocated
+    }
+
+    private static final int DATAGRAMS = 10000;
+    private static final int CLIENTS = 512;
+    private static final int MAXIMUM_TRANSFER_UNIT = 1464;
+    private static final InetSocketAddress SERVER_ADDRESS = new InetSocketAddress("127.0.0.1", 19132);
+
+    private final Random random = new Random(19132L);
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger messages = new AtomicInteger();
+    private int responses;
+
+    @Test
+    public void syntheticTrafficDoesNotLeak() throws UnknownHostException {
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS.getPort(), CLIENTS, MAXIMUM_TRANSFER_UNIT,
+                new Identifier("Leak test"));
+        server.setUnconnectedIngressLimit(1000000, 1000000);
+        server.setConnectedIngressLimit(1000000, 1000000);
+        server.setListener(new RakNetServerListener() {
+            @Override
+            public void onClientConnect(RakNetClientSession session) {
+                connected.incrementAndGet();
+            }
+
+            @Override
+            public void handleMessage(RakNetClientSession session, RakNetPacket packet, int channel) {
+                messages.incrementAndGet();
+            }
+
+            @Override
+            public void onSessionException(RakNetClientSession session, Throwable throwable) {
+                // Expected for garbage
+            }
+
+            @Override
+            public void onHandlerException(InetSocketAddress address, Throwable throwable) {
+                // Expected for garbage
+            }
+        });
+
+        EmbeddedChannel channel = new EmbeddedChannel();
+        server.start(channel);
+
+        SyntheticClient[] clients = new SyntheticClient[CLIENTS];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new SyntheticClient(new InetSocketAddress(
+                    InetAddress.getByAddress(new byte[]{10, 0, (byte) (i >> 8), (byte) i}), 40000 + i));
+        }
+        ArrayList<DatagramPacket> datagrams = new ArrayList<DatagramPacket>();
+        for (int sent = 0, rounds = 1; sent < DATAGRAMS; rounds++) {
+            clients[random.nextInt(clients.length)].next(datagrams);
+            for (DatagramPacket datagram : datagrams) {
+                channel.writeInbound(datagram);
+            }
+            sent += datagrams.size();
+            datagrams.clear();
+
+            // Let the sessions tick and throw away what the server sent
+            if (rounds % 64 == 0) {
+                this.drain(channel);
+            }
+        }
+        this.drain(channel);
+
+        // Closing the server must release everything the sessions still hold
+        server.shutdown();
+        this.drain(channel);
+        channel.finishAndReleaseAll();
+
+        assertTrue("No client finished logging in", connected.get() > 0);
+        assertTrue("No message reached the listener", messages.get() > 0);
+        assertTrue("The server never responded", responses > 0);
+        LeakCounter.assertNoLeaks();
+    }
+
+    private void drain(EmbeddedChannel channel) {
+        channel.runPendingTasks();
+        Object message;
+        while ((message = channel.readOutbound()) != null) {
+            ReferenceCountUtil.release(message);
+            this.responses++;
+        }
+    }
+
+    /**
+     * A client that sends whatever a real client would send next, with a few
+     * mistakes and some garbage mixed in.
+     */
+    private class SyntheticClient {
+
+        private final InetSocketAddress address;
+        private final long guid;
+        private int state;
+        private int sequenceNumber;
+        private int messageIndex;
+        private int orderIndex;
+        private int splitId;
+        private DatagramPacket held;
+
+        public SyntheticClient(InetSocketAddress address) {
+            this.address = address;
+            this.guid = random.nextLong();
+        }
+
+        /**
+         * Adds the next datagrams of the client to the specified list.
+         */
+        public void next(ArrayList<DatagramPacket> datagrams) throws UnknownHostException {
+            int roll = random.nextInt(100);
+            if (roll < 4) {
+                datagrams.add(this.garbage());
+            } else if (roll < 8) {
+                UnconnectedPing ping = new UnconnectedPing();
+                ping.timestamp = System.currentTimeMillis();
+                ping.encode();
+                datagrams.add(this.datagram(ping));
+            } else if (roll < 9) {
+                // Start over, the server drops the old session
+                RakNetPacket disconnect = new RakNetPacket(ID_DISCONNECTION_NOTIFICATION);
+                this.custom(datagrams, Reliability.RELIABLE_ORDERED, disconnect);
+                this.reset();
+            } else if (state == 0) {
+                OpenConnectionRequestOne requestOne = new OpenConnectionRequestOne();
+                requestOne.protocolVersion = RakNet.SERVER_NETWORK_PROTOCOL;
+                requestOne.maximumTransferUnit = MAXIMUM_TRANSFER_UNIT;
+                requestOne.encode();
+                datagrams.add(this.datagram(requestOne));
+                this.state++;
+            } else if (state == 1) {
+                OpenConnectionRequestTwo requestTwo = new OpenConnectionRequestTwo();
+                requestTwo.address = SERVER_ADDRESS;
+                requestTwo.maximumTransferUnit = MAXIMUM_TRANSFER_UNIT;
+                requestTwo.clientGuid = this.guid;
+                requestTwo.encode();
+                datagrams.add(this.datagram(requestTwo));
+                this.state++;
+            } else if (state == 2) {
+                ConnectionRequest request = new ConnectionRequest();
+                request.clientGuid = this.guid;
+                request.timestamp = System.currentTimeMillis();
+                request.encode();
+                this.custom(datagrams, Reliability.RELIABLE_ORDERED, request);
+                this.state++;
+            } else if (state == 3) {
+                NewIncomingConnection handshake = new NewIncomingConnection();
+                handshake.serverAddress = SERVER_ADDRESS;
+                handshake.clientTimestamp = System.currentTimeMillis();
+                handshake.encode();
+                this.custom(datagrams, Reliability.RELIABLE_ORDERED, handshake);
+                this.state++;
+            } else if (roll < 20) {
+                datagrams.add(this.acknowledge());
+            } else if (roll < 30) {
+                this.split(datagrams);
+            } else {
+                Reliability[] reliabilities = Reliability.values();
+                this.custom(datagrams, reliabilities[random.nextInt(reliabilities.length)],
+                        this.message(1 + random.nextInt(512)));
+            }
+        }
+
+        private void reset() {
+            this.state = 0;
+            this.sequenceNumber = 0;
+            this.messageIndex = 0;
+            this.orderIndex = 0;
+            if (held != null) {
+                held.release();
+                this.held = null;
+            }
+        }
+
+        private RakNetPacket message(int length) {
+            RakNetPacket message = new RakNetPacket(ID_USER_PACKET_ENUM + random.nextInt(16));
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            message.write(data);
+            return message;
+        }
+
+        private EncapsulatedPacket encapsulate(Reliability reliability, Packet payload) {
+            EncapsulatedPacket encapsulated = new EncapsulatedPacket();
+            encapsulated.reliability = reliability;
+            encapsulated.payload = payload;
+            if (reliability.isReliable()) {
+                encapsulated.messageIndex = messageIndex++;
+            }
+            if (reliability.isOrdered() || reliability.isSequenced()) {
+                encapsulated.orderIndex = orderIndex++;
+            }
+            return encapsulated;
+        }
+
+        private void custom(ArrayList<DatagramPacket> datagrams, Reliability reliability, Packet payload) {
+            CustomPacket custom = new CustomPacket();
+            custom.messages.add(this.encapsulate(reliability, payload));
+            this.send(datagrams, custom);
+        }
+
+        private void split(ArrayList<DatagramPacket> datagrams) {
+            RakNetPacket message = this.message(MAXIMUM_TRANSFER_UNIT + random.nextInt(8192));
+            int splitCount = 2 + random.nextInt(8);
+            int length = (message.size() + splitCount - 1) / splitCount;
+            int lost = (random.nextInt(8) == 0 ? random.nextInt(splitCount) : -1);
+            int orderIndex = this.orderIndex++;
+            int splitId = this.splitId++ % 65536;
+            for (int i = 0; i < splitCount; i++) {
+                ByteBuf buffer = message.buffer();
+                int offset = Math.min(i * length, buffer.writerIndex());
+                EncapsulatedPacket encapsulated = this.encapsulate(Reliability.RELIABLE, new Packet(
+                        buffer.retainedSlice(offset, Math.min(length, buffer.writerIndex() - offset))));
+                encapsulated.reliability = Reliability.RELIABLE_ORDERED;
+                encapsulated.orderIndex = orderIndex;
+                encapsulated.split = true;
+                encapsulated.splitCount = splitCount;
+                encapsulated.splitId = splitId;
+                encapsulated.splitIndex = i;
+                if (i == lost) {
+                    encapsulated.payload.release();
+                    continue; // Never arrives
+                }
+                CustomPacket custom = new CustomPacket();
+                custom.messages.add(encapsulated);
+                this.send(datagrams, custom);
+            }
+            message.release();
+        }
+
+        /**
+         * Encodes the <code>CustomPacket</code> and adds it to the list, it
+         * might be duplicated or held back until the next one.
+         */
+        private void send(ArrayList<DatagramPacket> datagrams, CustomPacket custom) {
+            custom.sequenceNumber = sequenceNumber++;
+            custom.encode();
+            for (EncapsulatedPacket encapsulated : custom.messages) {
+                encapsulated.payload.release();
+            }
+            DatagramPacket datagram = this.datagram(custom);
+
+            int roll = random.nextInt(100);
+            if (roll < 5) {
+                datagrams.add(datagram.copy());
+                datagrams.add(datagram);
+            } else if (roll < 10 && held == null) {
+                this.held = datagram;
+                return;
+            } else {
+                datagrams.add(datagram);
+            }
+            if (held != null) {
+                datagrams.add(held);
+                this.held = null;
+            }
+        }
+
+        private DatagramPacket acknowledge() {
+            Acknowledge acknowledge = new Acknowledge(random.nextBoolean() ? Acknowledge.ACKNOWLEDGED
+                    : Acknowledge.NOT_ACKNOWLEDGED);
+            int start = random.nextInt(64);
+            acknowledge.records.add(start, start + random.nextInt(32));
+            acknowledge.encode();
+            return this.datagram(acknowledge);
+        }
+
+        private DatagramPacket garbage() {
+            byte[] data = new byte[random.nextInt(64)];
+            random.nextBytes(data);
+            return new DatagramPacket(PacketAllocator.copiedBuffer(data), SERVER_ADDRESS, address);
+        }
+
+        private DatagramPacket datagram(Packet packet) {
+            return new DatagramPacket(packet.transferBuffer(), SERVER_ADDRESS, address);
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ *       _   _____            _      _   _          _   
+ *      | | |  __ \          | |    | \ | |        | |  
+ *      | | | |__) |   __ _  | | __ |  \| |   ___  | |_ 
+ *  _   | | |  _  /   / _` | | |/ / | . ` |  / _ \ | __|
+ * | |__| | | | \ \  | (_| | |   <  | |\  | |  __/ | |_ 
+ *  \____/  |_|  \_\  \__,_| |_|\_\ |_| \_|  \___|  \__|
+ *                                                  
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016, 2017 MarfGamer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.  
+ */
+package me.kernelfreeze.bedrockproxy.raknet.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Used by tests to count the buffers Netty reports as leaked. The counting
+ * detector has to be installed before the first buffer is allocated, since
+ * Netty creates the detector of its buffers only once, so tests that use it
+ * must call {@link #install()} from a static initializer and run in their own
+ * JVM.
+ *
+ * @author KernelFreeze
+ */
+public class LeakCounter {
+
+    private static final AtomicInteger leaks = new AtomicInteger();
+    private static boolean installed;
+
+    private LeakCounter() {
+        // Static class
+    }
+
+    /**
+     * Installs the counting detector and makes it track every buffer.
+     */
+    public static synchronized void install() {
+        if (installed == true) {
+            return; // Already installed
+        }
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        ResourceLeakDetectorFactory.setResourceLeakDetectorFactory(new ResourceLeakDetectorFactory() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public <T> ResourceLeakDetector<T> newResourceLeakDetector(Class<T> resource, int samplingInterval,
+                                                                       long maxActive) {
+                return new CountingDetector<T>(resource, samplingInterval);
+            }
+        });
+        installed = true;
+    }
+
+    /**
+     * @return the amount of leaks reported so far.
+     */
+    public static int getLeaks() {
+        return leaks.get();
+    }
+
+    /**
+     * Collects garbage until every buffer that is no longer reachable has been
+     * reported, then fails if any of them was leaked.
+     */
+    public static void assertNoLeaks() {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            System.runFinalization();
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            // Leaks are only reported when a new buffer is tracked
+            ByteBuf buffer = PacketAllocator.buffer();
+            buffer.release();
+        }
+        assertEquals("Buffers were leaked", 0, leaks.get());
+    }
+
+    /**
+     * A <code>ResourceLeakDetector</code> that counts the leaks it reports.
+     *
+     * @param <T> the type of the tracked resources.
+     */
+    private static class CountingDetector<T> extends ResourceLeakDetector<T> {
+
+        public CountingDetector(Class<?> resourceType, int samplingInterval) {
+            super(resourceType, samplingInterval);
+        }
+
+        @Override
+        protected void reportTracedLeak(String resourceType, String records) {
+            leaks.incrementAndGet();
+            super.reportTracedLeak(resourceType, records);
+        }
+
+        @Override
+        protected void reportUntracedLeak(String resourceType) {
+            leaks.incrementAndGet();
+            super.reportUntracedLeak(resourceType);
+        }
+
+    }
+
+}